@@ -0,0 +1,364 @@
+// packages for generating the data files and timing the operations
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+//more specific packages
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// benchmark that compares the three versions of the stock card system on the same synthetic data:
+// invStock (MS1, linkedList), invStockBST2 (MS2, plain BST) and invStockBST3 (Terminal Assessment, AVL tree)
+//
+// compile each version into its own folder and put them all on the classpath, then run from a scratch folder
+// (invStock writes inventory.csv into the current folder):
+//   javac -d out/ms2 MS2/invStockBST2.java
+//   javac -d out/ta "Terminal Assessment"/*.java
+//   javac -d out/bench Benchmarks/inventoryBenchmark.java
+//   java -cp out/bench:out/ms2:out/ta inventoryBenchmark --sizes 1000,10000,100000 > results.csv
+//
+// options:
+//   --sizes 1000,10000,...     rows per data file (default 1000,10000,100000)
+//   --orders random,sorted,brand-skewed
+//                              row order of the data files (default all three)
+//   --classes invStock,...     versions to run (default invStock,invStockBST2,invStockBST3)
+//   --runs 3                   times each case is run, the median is reported (default 3)
+//   --budget 60                seconds; once a case takes longer, that version skips the larger sizes
+//   --seed 42                  seed of the data generator, the same seed gives the same files
+//
+// the versions are reached by reflection, only through the public methods they all have, so any version that
+// is missing from the classpath (or does not compile) is skipped
+// public methods include the ones a version inherits, such as the prompts invStockBST3 gets from stockInventory
+// an operation a version does not have is only skipped if it is listed in NOT_IMPLEMENTED, any other missing
+// method stops the benchmark, so a renamed or moved method can never quietly drop rows from the results
+// searches and writes answer the Scanner prompts through System.in, exactly like a user would, and everything
+// the versions print goes to a null stream while they are timed
+//
+// the results are CSV on standard output, one line per version, size, order and operation, always in the
+// same order, so the files of two releases can be compared with diff:
+//   implementation,rows,order,operation,operations,median_ms,ns_per_op
+// lines starting with # describe the machine and the settings
+//
+// this is a plain harness and not JMH, because the repository has no build file to pull JMH in;
+// it warms up every version on the smallest size first and reports the median of several runs instead
+class inventoryBenchmark {
+    static final String[] BRANDS = {"Honda", "Yamaha", "Suzuki", "Kawasaki", "Kymco"};
+    static final String[] HEADERS = {
+            "Date when the stock is entered into inventory,Status of the stock in relation to previous month's inventory data,"
+                    + "Stock's brand,Stock's Engine number,Stock's purchase status",
+            "Date Entered,Stock Label,Brand,Engine Number,Status"};
+    // engine numbers are 10 characters of 0-9 and A-Z, like the MotorPH data
+    static final int ENGINE_LENGTH = 10;
+    // scrambled engine numbers are taken modulo 2^51, which still fits in 10 base-36 digits
+    // the multiplier is odd, so multiplying by it modulo 2^51 never maps two numbers onto the same one
+    static final long SCRAMBLE = 0x9E3779B97F4A7C15L;
+    static final long SCRAMBLE_MASK = (1L << 51) - 1;
+
+    // number of adds and deletes timed per case, and of repeated searches per field
+    static final int UPDATES = 1000;
+    static final int SEARCHES = 20;
+
+    // methods the older versions never had: invStock only adds items with all five fields and saves on its own
+    static final Map<String, Set<String>> NOT_IMPLEMENTED = Map.of("invStock", Set.of("addItem", "writeToCSV"));
+
+    private static final PrintStream RESULTS = System.out;
+    private static final PrintStream NULL = new PrintStream(OutputStream.nullOutputStream());
+
+    // time of an operation that threw instead of finishing
+    static final long FAILED = -1;
+
+    // one timed operation of a case
+    static class measurement {
+        final String operation;
+        final int operations;
+        final long nanos;
+
+        measurement(String operation, int operations, long nanos) {
+            this.operation = operation;
+            this.operations = operations;
+            this.nanos = nanos;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> sizes = List.of(1000, 10_000, 100_000);
+        List<String> orders = List.of("random", "sorted", "brand-skewed");
+        List<String> classes = List.of("invStock", "invStockBST2", "invStockBST3");
+        int runs = 3;
+        long budget = 60;
+        long seed = 42;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes": sizes = Arrays.stream(args[i + 1].split(",")).map(Integer::valueOf).toList(); break;
+                case "--orders": orders = List.of(args[i + 1].split(",")); break;
+                case "--classes": classes = List.of(args[i + 1].split(",")); break;
+                case "--runs": runs = Integer.parseInt(args[i + 1]); break;
+                case "--budget": budget = Long.parseLong(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        RESULTS.println("# java " + System.getProperty("java.version") + ", " + Runtime.getRuntime().availableProcessors()
+                + " cores, max heap " + Runtime.getRuntime().maxMemory() / (1 << 20) + " MB");
+        RESULTS.println("# sizes " + sizes + ", orders " + orders + ", runs " + runs + ", seed " + seed);
+        RESULTS.println("implementation,rows,order,operation,operations,median_ms,ns_per_op");
+
+        Path folder = Files.createTempDirectory("inventoryBenchmark");
+        try {
+            for (String className : classes) {
+                Class<?> type;
+                try {
+                    type = Class.forName(className);
+                } catch (ClassNotFoundException e) {
+                    System.err.println("Skipping " + className + ": not on the classpath.");
+                    continue;
+                }
+
+                // a small run first, so the timed runs measure compiled code
+                runCase(type, folder, Math.min(1000, sizes.get(0)), orders.get(0), seed);
+
+                for (String order : orders) {
+                    for (int size : sizes) {
+                        long started = System.nanoTime();
+                        List<List<measurement>> results = new ArrayList<>();
+                        for (int run = 0; run < runs; run++) {
+                            results.add(runCase(type, folder, size, order, seed));
+                        }
+                        report(className, size, order, results);
+
+                        long seconds = (System.nanoTime() - started) / 1_000_000_000L / runs;
+                        if (seconds > budget) {
+                            System.err.println("Skipping larger sizes of " + className + " (" + order + "): "
+                                    + size + " rows took " + seconds + " s per run.");
+                            break;
+                        }
+                    }
+                }
+            }
+        } finally {
+            System.setOut(RESULTS);
+            try (Stream<Path> files = Files.walk(folder)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    // runs every operation once on a fresh inventory loaded from a generated file
+    static List<measurement> runCase(Class<?> type, Path folder, int size, String order, long seed) throws Exception {
+        Path data = folder.resolve(order + "-" + size + ".csv");
+        if (!Files.exists(data)) {
+            generate(data, size, order, seed);
+        }
+        // a working copy, since writing and the change log of invStockBST3 change the files next to it
+        Path copy = folder.resolve(type.getSimpleName() + ".csv");
+        Files.copy(data, copy, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(folder.resolve(type.getSimpleName() + ".csv.wal"));
+
+        List<measurement> results = new ArrayList<>();
+        Object inventory = type.getDeclaredConstructor().newInstance();
+        System.setOut(NULL);
+        try {
+            time(results, "load", 1, () -> call(inventory, "loadFromCSV", copy.toString()));
+
+            // engine numbers that are not in the file yet
+            int updates = Math.min(UPDATES, size);
+            Method addItem = find(type, "addItem", 2);
+            if (addItem != null) {
+                time(results, "add", updates, () -> {
+                    for (int i = 0; i < updates; i++) {
+                        addItem.invoke(inventory, "Honda", engineNumber(order, size + i, seed));
+                    }
+                });
+            }
+
+            String[][] searches = {
+                    {"date", "1", "3/7/2023"},
+                    {"stock-label", "2", "New"},
+                    {"brand", "3", "Honda"},
+                    {"engine-number", "4", engineNumber(order, size / 2, seed)},
+                    {"status", "5", "Sold"}};
+            Method searchInventory = find(type, "searchInventory", 0);
+            for (String[] search : searches) {
+                if (searchInventory == null) {
+                    break;
+                }
+                byte[] answers = (search[1] + "\n" + search[2] + "\n").getBytes(StandardCharsets.UTF_8);
+                time(results, "search-" + search[0], SEARCHES, () -> {
+                    for (int i = 0; i < SEARCHES; i++) {
+                        withInput(answers, () -> searchInventory.invoke(inventory));
+                    }
+                });
+            }
+
+            Method deleteItem = find(type, "deleteItem", 1);
+            if (deleteItem != null) {
+                time(results, "delete", updates, () -> {
+                    for (int i = 0; i < updates; i++) {
+                        // spread over the whole file, so the deletes do not all hit the same part of the inventory
+                        deleteItem.invoke(inventory, engineNumber(order, (int) ((long) i * size / updates), seed));
+                    }
+                });
+            }
+
+            if (find(type, "sortbyBrand", 0) != null) {
+                time(results, "sort-by-brand", 1, () -> call(inventory, "sortbyBrand"));
+            }
+
+            if (find(type, "displayInventory", 0) != null) {
+                time(results, "display", 1, () -> call(inventory, "displayInventory"));
+            }
+
+            Method writeToCSV = find(type, "writeToCSV", 1);
+            if (writeToCSV != null) {
+                byte[] confirm = "yes\n".getBytes(StandardCharsets.UTF_8);
+                time(results, "write", 1, () -> withInput(confirm, () -> writeToCSV.invoke(inventory, copy.toString())));
+            }
+        } finally {
+            System.setOut(RESULTS);
+        }
+
+        // lets go of the change log of invStockBST3 before its file is deleted
+        try {
+            Method closeLog = type.getDeclaredMethod("closeLog");
+            closeLog.setAccessible(true);
+            closeLog.invoke(inventory);
+        } catch (NoSuchMethodException e) {
+            // only invStockBST3 has a change log
+        }
+        return results;
+    }
+
+    // times one operation and adds it to the results
+    // an operation that throws, such as a recursive method running out of stack on a degenerate tree, is recorded
+    // as failed and the case goes on with the next operation
+    static void time(List<measurement> results, String operation, int operations, action action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+            results.add(new measurement(operation, operations, System.nanoTime() - start));
+        } catch (Throwable e) {
+            Throwable cause = e;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            System.err.println(operation + " failed: " + cause);
+            results.add(new measurement(operation, operations, FAILED));
+        }
+    }
+
+    // prints the median of every operation over the runs, or FAILED if it failed in any run
+    static void report(String className, int size, String order, List<List<measurement>> runs) {
+        List<measurement> first = runs.get(0);
+        for (int i = 0; i < first.size(); i++) {
+            long[] nanos = new long[runs.size()];
+            for (int run = 0; run < runs.size(); run++) {
+                nanos[run] = runs.get(run).get(i).nanos;
+            }
+            Arrays.sort(nanos);
+            measurement m = first.get(i);
+            if (nanos[0] == FAILED) {
+                RESULTS.printf("%s,%d,%s,%s,%d,FAILED,FAILED%n", className, size, order, m.operation, m.operations);
+                continue;
+            }
+            long median = nanos[nanos.length / 2];
+            RESULTS.printf("%s,%d,%s,%s,%d,%.3f,%d%n", className, size, order, m.operation, m.operations,
+                    median / 1e6, median / m.operations);
+        }
+    }
+
+    // writes a data file in the MotorPH format with the given number of rows
+    //   random:       engine numbers in random order, brands spread evenly
+    //   sorted:       engine numbers in ascending order, brands spread evenly
+    //   brand-skewed: engine numbers in random order, 70% of the units are Honda
+    static void generate(Path file, int size, String order, long seed) throws IOException {
+        if (!order.equals("random") && !order.equals("sorted") && !order.equals("brand-skewed")) {
+            throw new IllegalArgumentException("Unknown order " + order);
+        }
+        Random random = new Random(seed);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (String header : HEADERS) {
+                out.write(header);
+                out.newLine();
+            }
+            for (int i = 0; i < size; i++) {
+                String brand = order.equals("brand-skewed") && random.nextInt(10) < 7
+                        ? "Honda" : BRANDS[random.nextInt(BRANDS.length)];
+                // February and March 2023, like the MotorPH data
+                int month = 2 + random.nextInt(2);
+                int day = 1 + random.nextInt(28);
+                out.write(month + "/" + day + "/2023," + (random.nextBoolean() ? "New" : "Old") + "," + brand + ","
+                        + engineNumber(order, i, seed) + "," + (random.nextBoolean() ? "On-hand" : "Sold"));
+                out.newLine();
+            }
+        }
+    }
+
+    // returns the engine number of the i-th unit of a data file, which is different for every i
+    // sorted files count up in fixed-width base 36, so they are in ascending order; the other files scramble
+    // the number first
+    static String engineNumber(String order, int i, long seed) {
+        long value = order.equals("sorted") ? (i + 1) * 1_000L : ((i + seed) * SCRAMBLE) & SCRAMBLE_MASK;
+        char[] digits = new char[ENGINE_LENGTH];
+        for (int d = ENGINE_LENGTH - 1; d >= 0; d--) {
+            digits[d] = Character.toUpperCase(Character.forDigit((int) (value % 36), 36));
+            value /= 36;
+        }
+        return new String(digits);
+    }
+
+    // returns a public method with a number of parameters, declared or inherited, or null if the version is
+    // listed in NOT_IMPLEMENTED as not having it
+    // throws if any other version does not have it
+    static Method find(Class<?> type, String name, int parameters) {
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == parameters) {
+                return method;
+            }
+        }
+        if (NOT_IMPLEMENTED.getOrDefault(type.getSimpleName(), Set.of()).contains(name)) {
+            return null;
+        }
+        throw new IllegalStateException(type.getSimpleName() + " has no public method " + name + " with "
+                + parameters + " parameter(s).");
+    }
+
+    static void call(Object target, String name, Object... arguments) throws Exception {
+        try {
+            find(target.getClass(), name, arguments.length).invoke(target, arguments);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(name + " failed", e.getCause());
+        }
+    }
+
+    interface action {
+        void run() throws Exception;
+    }
+
+    // runs an action with System.in answering its prompts
+    static void withInput(byte[] answers, action action) throws Exception {
+        InputStream in = System.in;
+        System.setIn(new ByteArrayInputStream(answers));
+        try {
+            action.run();
+        } finally {
+            System.setIn(in);
+        }
+    }
+}
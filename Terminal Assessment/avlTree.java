@@ -0,0 +1,100 @@
+// packages for building a tree from sorted nodes
+import java.util.List;
+
+// AVL balancing shared by the storage modes, written against a few methods that read and set the links of a node
+// invStockBST3 links treeNode objects and persistentInventory copies its immutable nodes instead of changing them,
+// so both balance their trees with the code below; columnarInventory links row ids in primitive arrays, which
+// intAvlTree balances the same way without boxing them
+// a null node is an empty subtree
+abstract class avlTree<N> {
+    abstract N left(N node);
+
+    abstract N right(N node);
+
+    // returns the height of a subtree, an empty subtree has a height of zero
+    abstract int height(N node);
+
+    // returns the node with new children and its height recalculated from theirs
+    // a tree of mutable nodes changes the node itself and returns it, a persistent tree returns a changed copy
+    abstract N link(N node, N newLeft, N newRight);
+
+    // returns a node with new children after restoring the AVL property, for subtrees that differ in height by at
+    // most two, which is all one add or delete below the node can do
+    // returns the root of the subtree after any rotations
+    final N balance(N node, N newLeft, N newRight) {
+        int balance = height(newLeft) - height(newRight);
+
+        // left side is too tall
+        if (balance > 1) {
+            // left-right case: rotate the left child first so it becomes a left-left case
+            if (height(left(newLeft)) < height(right(newLeft))) {
+                newLeft = rotateLeft(newLeft);
+            }
+            return rotateRight(link(node, newLeft, newRight));
+        }
+
+        // right side is too tall
+        if (balance < -1) {
+            // right-left case: rotate the right child first so it becomes a right-right case
+            if (height(right(newRight)) < height(left(newRight))) {
+                newRight = rotateRight(newRight);
+            }
+            return rotateLeft(link(node, newLeft, newRight));
+        }
+
+        return link(node, newLeft, newRight);
+    }
+
+    // rotates a subtree to the right and returns its new root
+    //       node             pivot
+    //      /     \          /     \
+    //   pivot     C   ->   A      node
+    //   /   \                    /    \
+    //  A     B                  B      C
+    final N rotateRight(N node) {
+        N pivot = left(node);
+        return link(pivot, left(pivot), link(node, right(pivot), right(node)));
+    }
+
+    // rotates a subtree to the left and returns its new root (mirror image of rotateRight)
+    final N rotateLeft(N node) {
+        N pivot = right(node);
+        return link(pivot, link(node, left(node), left(pivot)), right(pivot));
+    }
+
+    // returns the root of a subtree without the node at its root, which is being deleted
+    // the in-order successor takes its place, relinked rather than having its fields copied,
+    // so a node always keeps its own data
+    final N unlink(N node) {
+        if (left(node) == null) return right(node);
+        if (right(node) == null) return left(node);
+        return balance(min(right(node)), left(node), removeMin(right(node)));
+    }
+
+    // returns the root of a subtree after its minimum node has been removed and the subtree rebalanced
+    final N removeMin(N node) {
+        if (left(node) == null) {
+            return right(node);
+        }
+        return balance(node, removeMin(left(node)), right(node));
+    }
+
+    // returns the minimum node of a subtree, the smallest node of the right subtree is the in-order successor
+    final N min(N node) {
+        // traverses the left side of the tree because it is smaller, and it always has a smaller value
+        while (left(node) != null) {
+            node = left(node);
+        }
+        return node;
+    }
+
+    // builds a perfectly balanced subtree from the sorted nodes between from (inclusive) and to (exclusive)
+    // the middle node becomes the root, so the recursion is only as deep as the resulting tree
+    final N buildBalanced(List<N> nodes, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        return link(nodes.get(middle), buildBalanced(nodes, from, middle), buildBalanced(nodes, middle + 1, to));
+    }
+}
@@ -0,0 +1,328 @@
+// packages for reading the command file
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+//more specific packages
+import java.util.ArrayList;
+import java.util.List;
+
+// runs inventory commands from a file or from standard input without asking anything, for scripts and bulk jobs
+// started with: java invStockBST3 --batch <command file>, or --batch - to read standard input
+//
+// one command per line, fields separated by commas, blank lines and lines starting with # are skipped:
+//   load,<csv file>
+//   add,<brand>,<engine number>                                 dated today, New and On-hand, like addItem
+//   add,<date>,<stock label>,<brand>,<engine number>,<status>   same fields as a CSV row
+//   delete,<engine number>
+//   edit,<engine number>,<date>,<stock label>,<brand>,<status>  empty fields keep their current value
+//   search,<criterion>,<value>[,<to>]                           criterion: date, label, brand, engine, status,
+//                                                               key, dates, prefix or range, or its menu number
+//   save,<csv file>                                             no confirmation is asked
+//
+// every result is one tab-separated line on standard output: line number, command, result, details
+//   adds, deletes and edits give the outcome of the item, such as ADDED or NOT_FOUND, and the engine number
+//   a search gives one MATCH line per unit (date, stock label, brand, engine number, status), then COUNT
+//   a line that cannot be run gives ERROR and the reason
+// a tab, line break or backslash inside a value is written as \t, \n, \r or \\, so every result stays one line
+// with the same number of columns
+// the messages the inventory normally prints go to standard error instead, so standard output only has results
+//
+// consecutive adds, deletes or edits are applied as one batch through addAll, deleteAll and updateAll,
+// which gives the same result as applying them one at a time
+class batchRunner {
+    // a batch is applied once it has this many items, so a long run of commands does not pile up in memory
+    static final int BATCH_LIMIT = 65_536;
+
+    private final invStockBST3 inventory;
+    private final PrintStream out;
+    private int errors;
+
+    // commands of the batch that has not been applied yet, all of the same type
+    private String pendingCommand;
+    private final List<Integer> pendingLines = new ArrayList<>();
+    private final List<invStockBST3.treeNode> pendingAdds = new ArrayList<>();
+    private final List<String> pendingDeletes = new ArrayList<>();
+    private final List<invStockBST3.itemUpdate> pendingEdits = new ArrayList<>();
+
+    batchRunner(invStockBST3 inventory, PrintStream out) {
+        this.inventory = inventory;
+        this.out = out;
+    }
+
+    // method to run a command file, "-" reads standard input
+    // returns the number of lines that gave an error, so the caller can set the exit status
+    static int run(invStockBST3 inventory, String filename) {
+        PrintStream results = System.out;
+        System.setOut(System.err);
+        try (BufferedReader reader = filename.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)) {
+            batchRunner runner = new batchRunner(inventory, results);
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                runner.execute(++lineNumber, line);
+            }
+            runner.flush();
+            return runner.errors;
+        } catch (IOException e) {
+            System.err.println("Error reading command file: " + e.getMessage());
+            return 1;
+        } finally {
+            results.flush();
+            System.setOut(results);
+        }
+    }
+
+    // method to run one line of the command file
+    void execute(int lineNumber, String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return;
+        }
+
+        String[] fields = trimmed.split(",", -1);
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].trim();
+        }
+        String command = fields[0].toLowerCase();
+
+        // a command of another type ends the batch, so every result is printed in line order
+        if (!command.equals(pendingCommand)) {
+            flush();
+        }
+
+        switch (command) {
+            case "add":
+                add(lineNumber, fields);
+                break;
+            case "delete":
+                if (fields.length != 2 || fields[1].isEmpty()) {
+                    error(lineNumber, command, "expected delete,<engine number>");
+                    break;
+                }
+                queue(lineNumber, command);
+                pendingDeletes.add(fields[1]);
+                break;
+            case "edit":
+                edit(lineNumber, fields);
+                break;
+            case "search":
+                search(lineNumber, fields);
+                break;
+            case "load":
+                if (fields.length != 2 || fields[1].isEmpty()) {
+                    error(lineNumber, command, "expected load,<csv file>");
+                    break;
+                }
+                // loadFromCSV only prints its errors, so a missing file is caught here
+                if (!Files.isRegularFile(Paths.get(fields[1]))) {
+                    error(lineNumber, command, "file not found " + fields[1]);
+                    break;
+                }
+                inventory.loadFromCSV(fields[1]);
+                result(lineNumber, command, "LOADED", String.valueOf(inventory.size()));
+                break;
+            case "save":
+                if (fields.length != 2 || fields[1].isEmpty()) {
+                    error(lineNumber, command, "expected save,<csv file>");
+                    break;
+                }
+                try {
+                    inventory.saveCSV(fields[1]);
+                    result(lineNumber, command, "SAVED", fields[1]);
+                } catch (IOException e) {
+                    error(lineNumber, command, e.getMessage());
+                }
+                break;
+            default:
+                error(lineNumber, command, "unknown command");
+                break;
+        }
+
+        if (pendingLines.size() >= BATCH_LIMIT) {
+            flush();
+        }
+    }
+
+    // method to apply the batch that has been collected and print the result of every item
+    void flush() {
+        if (pendingCommand == null) {
+            return;
+        }
+
+        invStockBST3.batchReport report;
+        switch (pendingCommand) {
+            case "add":
+                report = inventory.addAll(pendingAdds);
+                break;
+            case "delete":
+                report = inventory.deleteAll(pendingDeletes);
+                break;
+            default:
+                report = inventory.updateAll(pendingEdits);
+                break;
+        }
+        for (int i = 0; i < report.size(); i++) {
+            result(pendingLines.get(i), pendingCommand, report.outcomes[i].name(), report.engineNumbers[i]);
+            if (report.outcomes[i] == invStockBST3.outcome.INVALID_DATE
+                    || report.outcomes[i] == invStockBST3.outcome.NOT_LOGGED) {
+                errors++;
+            }
+        }
+
+        pendingCommand = null;
+        pendingLines.clear();
+        pendingAdds.clear();
+        pendingDeletes.clear();
+        pendingEdits.clear();
+    }
+
+    private void add(int lineNumber, String[] fields) {
+        int date;
+        String stockLabel;
+        String brand;
+        String engineNumber;
+        String status;
+        if (fields.length == 3) {
+            // same defaults as addItem
+            date = (int) LocalDate.now().toEpochDay();
+            stockLabel = "New";
+            brand = fields[1];
+            engineNumber = fields[2];
+            status = "On-hand";
+        } else if (fields.length == 6) {
+            // an invalid date is reported by addAll
+            date = invStockBST3.stockDate.parse(fields[1]);
+            stockLabel = fields[2];
+            brand = fields[3];
+            engineNumber = fields[4];
+            status = fields[5];
+        } else {
+            error(lineNumber, "add", "expected add,<brand>,<engine number> or add,<date>,<stock label>,<brand>,<engine number>,<status>");
+            return;
+        }
+        if (engineNumber.isEmpty()) {
+            error(lineNumber, "add", "missing engine number");
+            return;
+        }
+
+        queue(lineNumber, "add");
+        pendingAdds.add(new invStockBST3.treeNode(date, stockLabel, brand, engineNumber, status,
+                invStockBST3.engineKey.pack(engineNumber)));
+    }
+
+    private void edit(int lineNumber, String[] fields) {
+        if (fields.length != 6 || fields[1].isEmpty()) {
+            error(lineNumber, "edit", "expected edit,<engine number>,<date>,<stock label>,<brand>,<status>");
+            return;
+        }
+
+        // unlike editItem, an invalid date leaves the whole line out instead of only the date
+        int date = invStockBST3.stockDate.INVALID;
+        if (!fields[2].isEmpty()) {
+            date = invStockBST3.stockDate.parse(fields[2]);
+            if (date == invStockBST3.stockDate.INVALID) {
+                flush();
+                result(lineNumber, "edit", invStockBST3.outcome.INVALID_DATE.name(), fields[1]);
+                errors++;
+                return;
+            }
+        }
+
+        queue(lineNumber, "edit");
+        pendingEdits.add(new invStockBST3.itemUpdate(fields[1], date, orNull(fields[3]), orNull(fields[4]), orNull(fields[5])));
+    }
+
+    private void search(int lineNumber, String[] fields) {
+        if (fields.length < 3 || fields.length > 4) {
+            error(lineNumber, "search", "expected search,<criterion>,<value>[,<to>]");
+            return;
+        }
+
+        int choice = criterion(fields[1]);
+        if (choice == 0) {
+            error(lineNumber, "search", "unknown criterion " + fields[1]);
+            return;
+        }
+        String to = fields.length == 4 ? fields[3] : "";
+        if ((choice == 7 || choice == 9) && to.isEmpty()) {
+            error(lineNumber, "search", "a range needs a value and a to");
+            return;
+        }
+        if ((choice == 1 || choice == 7) && (invStockBST3.stockDate.parse(fields[2]) == invStockBST3.stockDate.INVALID
+                || choice == 7 && invStockBST3.stockDate.parse(to) == invStockBST3.stockDate.INVALID)) {
+            error(lineNumber, "search", "invalid date");
+            return;
+        }
+
+        // the matches are written as they come, so a streamed search is never collected first
+        int count = 0;
+        for (invStockBST3.treeNode node : inventory.matches(choice, fields[2], to)) {
+            result(lineNumber, "search", "MATCH", invStockBST3.stockDate.format(node.date), node.stockLabel,
+                    node.brand, node.engineNumber, node.status);
+            count++;
+        }
+        result(lineNumber, "search", "COUNT", String.valueOf(count));
+    }
+
+    // returns the menu number of a search criterion given by name or by number, or 0
+    static int criterion(String value) {
+        for (int i = 0; i < invStockBST3.SEARCH_CRITERIA.size(); i++) {
+            if (invStockBST3.SEARCH_CRITERIA.get(i).equalsIgnoreCase(value) || String.valueOf(i + 1).equals(value)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    // adds a line to the batch of its command
+    private void queue(int lineNumber, String command) {
+        pendingCommand = command;
+        pendingLines.add(lineNumber);
+    }
+
+    private void error(int lineNumber, String command, String message) {
+        flush();
+        result(lineNumber, command, "ERROR", message);
+        errors++;
+    }
+
+    // writes one result line, the details are the last columns
+    private void result(int lineNumber, String command, String result, String... details) {
+        StringBuilder line = new StringBuilder().append(lineNumber).append('\t').append(escape(command))
+                .append('\t').append(result);
+        for (String detail : details) {
+            line.append('\t').append(escape(detail));
+        }
+        out.println(line);
+    }
+
+    // escapes the characters that would split a value into extra columns or lines
+    static String escape(String value) {
+        if (value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0 && value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\t': escaped.append("\\t"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                case '\\': escaped.append("\\\\"); break;
+                default: escaped.append(c); break;
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String orNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,518 @@
+// packages for the off-heap columns
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+//more specific packages
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// alternative storage mode that keeps the inventory in off-heap columns instead of treeNode objects
+// every unit is a row id; its fields live in direct ByteBuffers, one buffer per column:
+// - engine number as fixed-width bytes
+// - date as an epoch day
+// - brand, stock label and status as codes into a dictionary of their distinct values
+// the engine number index is an AVL tree made of primitive arrays that only holds row ids,
+// so the heap holds about 17 bytes per unit instead of six objects
+// start the menu in this mode with: java invStockBST3 --columnar
+class columnarInventory implements stockInventory {
+    // engine numbers are stored in a fixed-width column, padded with zero bytes
+    static final int ENGINE_WIDTH = 16;
+    // row id used for "no row", like null for nodes, and the empty subtree of the index
+    static final int NONE = intAvlTree.EMPTY;
+    static final int INITIAL_CAPACITY = 1024;
+
+    // dictionary of the distinct values of a low-cardinality column
+    // codes are stored in two bytes, so a column can have at most CAPACITY distinct values
+    static class dictionary {
+        static final int CAPACITY = 1 << 16;
+
+        private final List<String> values = new ArrayList<>();
+        private final HashMap<String, Integer> codes = new HashMap<>();
+
+        // true if encode can return a code for the value, because it is known or there is room for it
+        boolean canEncode(String value) {
+            return values.size() < CAPACITY || codes.containsKey(value);
+        }
+
+        // returns the code of a value, adding it to the dictionary if it is new
+        // callers check canEncode first, so running out of codes is a bug
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                if (values.size() >= CAPACITY) {
+                    throw new IllegalStateException("Too many distinct values for a dictionary column.");
+                }
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        // returns the code of a value, or NONE if no row has ever had it
+        int find(String value) {
+            Integer code = codes.get(value);
+            return code == null ? NONE : code;
+        }
+
+        String decode(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    // off-heap columns
+    private ByteBuffer engines;
+    private ByteBuffer dates;
+    private ByteBuffer brands;
+    private ByteBuffer stockLabels;
+    private ByteBuffer statuses;
+
+    private final dictionary brandDictionary = new dictionary();
+    private final dictionary stockLabelDictionary = new dictionary();
+    private final dictionary statusDictionary = new dictionary();
+
+    // AVL index over row ids, ordered by engine number
+    private long[] keys;
+    private int[] left;
+    private int[] right;
+    private byte[] heights;
+    private int root = NONE;
+
+    // rows ever used, rows in use, and deleted rows waiting to be reused (linked through left)
+    private int capacity;
+    private int rowCount;
+    private int size;
+    private int freeRows = NONE;
+
+    // scratch space for reading an engine number out of its column
+    private final byte[] engineScratch = new byte[ENGINE_WIDTH];
+
+    // AVL balancing of the index on the row ids themselves, see intAvlTree
+    private final intAvlTree index = new intAvlTree() {
+        @Override
+        int left(int row) {
+            return left[row];
+        }
+
+        @Override
+        int right(int row) {
+            return right[row];
+        }
+
+        @Override
+        int height(int row) {
+            return row == NONE ? 0 : heights[row];
+        }
+
+        @Override
+        int link(int row, int newLeft, int newRight) {
+            left[row] = newLeft;
+            right[row] = newRight;
+            heights[row] = (byte) (1 + Math.max(height(newLeft), height(newRight)));
+            return row;
+        }
+    };
+
+    columnarInventory() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // method to load data from CSV into the columns
+    // rows are appended straight from the mapped file, so no treeNode is ever created
+    public void loadFromCSV(String filename) {
+        try {
+            csvLoader.forEachRow(filename, new csvLoader.rowVisitor() {
+                @Override
+                public void row(csvRowParser parser, ByteBuffer buffer) {
+                    // the date is parsed straight into an epoch day, rows without a valid date are skipped
+                    int date = parser.dateField(buffer, 0);
+                    if (date == invStockBST3.stockDate.INVALID) {
+                        invalidRow(parser.row(buffer));
+                        return;
+                    }
+                    addRow(date, parser.sharedField(buffer, 1), parser.sharedField(buffer, 2), parser.field(buffer, 3),
+                            parser.sharedField(buffer, 4));
+                }
+
+                @Override
+                public void invalidRow(String row) {
+                    System.out.println("Skipping invalid row: " + row);
+                }
+            });
+            System.out.println("CSV file loaded successfully.");
+        } catch (IOException e) {
+            System.err.println("Error reading CSV file: " + e.getMessage());
+        }
+    }
+
+    // method to add an item with all five categories
+    // returns false if the item was not added
+    public boolean addItemCSV(String date, String stockLabel, String brand, String engineNumber, String status) {
+        int epochDay = invStockBST3.stockDate.parse(date);
+        if (epochDay == invStockBST3.stockDate.INVALID) {
+            System.out.println("Invalid date (" + date + ") for engine number " + engineNumber + ". Entry not added.");
+            return false;
+        }
+        return addRow(epochDay, stockLabel, brand, engineNumber, status);
+    }
+
+    // adds an item whose date is already an epoch day, returns false if it was not added
+    private boolean addRow(int epochDay, String stockLabel, String brand, String engineNumber, String status) {
+        byte[] engineBytes = engineNumber.getBytes(StandardCharsets.UTF_8);
+        if (engineBytes.length > ENGINE_WIDTH) {
+            System.out.println("Engine number too long for columnar storage: (" + engineNumber + "). Entry not added.");
+            return false;
+        }
+
+        long key = invStockBST3.engineKey.pack(engineNumber);
+        if (findRow(key, engineBytes) != NONE) {
+            System.out.println("Duplicate engine number detected: (" + engineNumber + "). Entry not added.");
+            return false;
+        }
+        // checked before a row is taken, so a refused item leaves nothing behind
+        if (!canStore(stockLabel, brand, status)) {
+            System.out.println("Too many distinct stock labels, brands or statuses for columnar storage: ("
+                    + engineNumber + "). Entry not added.");
+            return false;
+        }
+
+        int row = allocateRow();
+        engines.put(row * ENGINE_WIDTH, engineBytes);
+        for (int i = engineBytes.length; i < ENGINE_WIDTH; i++) {
+            engines.put(row * ENGINE_WIDTH + i, (byte) 0);
+        }
+        dates.putInt(row * 4, epochDay);
+        brands.putShort(row * 2, (short) brandDictionary.encode(brand));
+        stockLabels.putShort(row * 2, (short) stockLabelDictionary.encode(stockLabel));
+        statuses.putShort(row * 2, (short) statusDictionary.encode(status));
+
+        keys[row] = key;
+        left[row] = right[row] = NONE;
+        heights[row] = 1;
+        root = insert(root, row);
+        size++;
+        return true;
+    }
+
+    // method to add an item from the user side, newly added stock is always new and on-hand
+    public void addItem(String brand, String engineNumber) {
+        addItemCSV(invStockBST3.stockDate.format((int) LocalDate.now().toEpochDay()), "New", brand, engineNumber, "On-hand");
+    }
+
+    // method to delete an item based on engine number
+    public void deleteItem(String engineNumber) {
+        int row = rowOf(engineNumber);
+        if (row == NONE) {
+            System.out.println("Item with engine number " + engineNumber + " not found.");
+            return;
+        }
+        root = delete(root, row);
+        // the row goes on the free list so the next add can reuse it
+        left[row] = freeRows;
+        freeRows = row;
+        size--;
+        System.out.println("Item with engine number " + engineNumber + " deleted.");
+    }
+
+    // method to edit an item once stockInventory.editItem has asked for the new values
+    // a date of stockDate.INVALID or a null value keeps the current value
+    // returns false without changing anything if the unit is not there, or a new value does not fit a dictionary
+    public boolean update(invStockBST3.itemUpdate update) {
+        int row = rowOf(update.engineNumber);
+        if (row == NONE) {
+            return false;
+        }
+        if (!canStore(update.stockLabel, update.brand, update.status)) {
+            System.out.println("Too many distinct stock labels, brands or statuses for columnar storage.");
+            return false;
+        }
+        if (update.date != invStockBST3.stockDate.INVALID) dates.putInt(row * 4, update.date);
+        if (update.stockLabel != null) stockLabels.putShort(row * 2, (short) stockLabelDictionary.encode(update.stockLabel));
+        if (update.brand != null) brands.putShort(row * 2, (short) brandDictionary.encode(update.brand));
+        if (update.status != null) statuses.putShort(row * 2, (short) statusDictionary.encode(update.status));
+        return true;
+    }
+
+    // method to find a unit by engine number, as a treeNode copy of its row, or null
+    public invStockBST3.treeNode find(String engineNumber) {
+        int row = rowOf(engineNumber);
+        return row == NONE ? null : node(row);
+    }
+
+    // method to find the row of an engine number, or NONE
+    public int rowOf(String engineNumber) {
+        byte[] engineBytes = engineNumber.getBytes(StandardCharsets.UTF_8);
+        if (engineBytes.length > ENGINE_WIDTH) {
+            return NONE;
+        }
+        return findRow(invStockBST3.engineKey.pack(engineNumber), engineBytes);
+    }
+
+    // method to search the inventory with the first five choices of stockInventory.searchInventory
+    // dictionary columns are matched by comparing their codes, so no Strings are created while scanning
+    public List<Integer> search(int choice, String searchValue) {
+        List<Integer> matches = new ArrayList<>();
+        switch (choice) {
+            case 1: {
+                int epochDay = invStockBST3.stockDate.parse(searchValue);
+                forEachRow(row -> {
+                    if (dates.getInt(row * 4) == epochDay) matches.add(row);
+                });
+                break;
+            }
+            case 2: scanCodes(stockLabels, stockLabelDictionary.find(searchValue), matches); break;
+            case 3: scanCodes(brands, brandDictionary.find(searchValue), matches); break;
+            case 4: {
+                int row = rowOf(searchValue);
+                if (row != NONE) matches.add(row);
+                break;
+            }
+            case 5: scanCodes(statuses, statusDictionary.find(searchValue), matches); break;
+            default: break;
+        }
+        return matches;
+    }
+
+    // matches of a search for the prompts of stockInventory.searchInventory, as treeNode copies of the rows
+    // the columns have no index for keys and ranges, so those searches are not available in this mode
+    public Iterable<invStockBST3.treeNode> matches(int choice, String searchValue, String to) {
+        if (choice < 1 || choice > 5) {
+            return null;
+        }
+        List<Integer> rows = search(choice, searchValue);
+        return () -> rows.stream().map(this::node).iterator();
+    }
+
+    // method to display the inventory in engine number order
+    public void displayInventory() {
+        if (size == 0) {
+            System.out.println("Inventory is empty.");
+            return;
+        }
+        System.out.println("Current Inventory:");
+        forEachRow(row -> invStockBST3.displayNode(node(row)));
+    }
+
+    // method to write the inventory to a CSV file in engine number order, see invStockBST3.writeCSVFile
+    public void saveCSV(String filename) throws IOException {
+        invStockBST3.writeCSVFile(filename, out -> {
+            try {
+                forEachRow(row -> {
+                    try {
+                        out.row(dates.getInt(row * 4), stockLabel(row), brand(row), engineNumber(row), status(row));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    // goes through every row in engine number order, using an explicit stack
+    public void forEachRow(IntConsumer action) {
+        int[] stack = new int[heights.length == 0 || root == NONE ? 1 : heights[root] + 1];
+        int depth = 0;
+        int row = root;
+        while (row != NONE || depth > 0) {
+            while (row != NONE) {
+                stack[depth++] = row;
+                row = left[row];
+            }
+            row = stack[--depth];
+            action.accept(row);
+            row = right[row];
+        }
+    }
+
+    // accessors for the fields of a row
+    public String engineNumber(int row) {
+        int length = 0;
+        while (length < ENGINE_WIDTH && engines.get(row * ENGINE_WIDTH + length) != 0) {
+            engineScratch[length] = engines.get(row * ENGINE_WIDTH + length);
+            length++;
+        }
+        return new String(engineScratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public String date(int row) {
+        return invStockBST3.stockDate.format(dates.getInt(row * 4));
+    }
+
+    public String stockLabel(int row) {
+        return stockLabelDictionary.decode(stockLabels.getShort(row * 2) & 0xFFFF);
+    }
+
+    public String brand(int row) {
+        return brandDictionary.decode(brands.getShort(row * 2) & 0xFFFF);
+    }
+
+    public String status(int row) {
+        return statusDictionary.decode(statuses.getShort(row * 2) & 0xFFFF);
+    }
+
+    // copy of a row as a treeNode, for the menu prompts and displaying
+    public invStockBST3.treeNode node(int row) {
+        return new invStockBST3.treeNode(dates.getInt(row * 4), stockLabel(row), brand(row), engineNumber(row), status(row),
+                keys[row]);
+    }
+
+    // number of units in the inventory
+    public int size() {
+        return size;
+    }
+
+    // bytes held outside the heap by the columns
+    public long offHeapBytes() {
+        return (long) capacity * (ENGINE_WIDTH + 4 + 2 + 2 + 2);
+    }
+
+    // bytes held on the heap by the index
+    public long indexBytes() {
+        return (long) capacity * (8 + 4 + 4 + 1);
+    }
+
+    // true if every value that is not null has, or can get, a code in its dictionary
+    private boolean canStore(String stockLabel, String brand, String status) {
+        return (stockLabel == null || stockLabelDictionary.canEncode(stockLabel))
+                && (brand == null || brandDictionary.canEncode(brand))
+                && (status == null || statusDictionary.canEncode(status));
+    }
+
+    // compares the values of a dictionary column against a code
+    private void scanCodes(ByteBuffer column, int code, List<Integer> matches) {
+        if (code == NONE) {
+            return;
+        }
+        forEachRow(row -> {
+            if ((column.getShort(row * 2) & 0xFFFF) == code) matches.add(row);
+        });
+    }
+
+    // looks up an engine number in the index
+    private int findRow(long key, byte[] engineBytes) {
+        int row = root;
+        while (row != NONE) {
+            int cmp = compare(key, engineBytes, row);
+            if (cmp == 0) {
+                return row;
+            }
+            row = cmp < 0 ? left[row] : right[row];
+        }
+        return NONE;
+    }
+
+    // compares an engine number with the engine number of a row
+    // packed keys are compared directly; otherwise the bytes are compared, which gives the same order
+    private int compare(long key, byte[] engineBytes, int row) {
+        if (key != invStockBST3.engineKey.NO_KEY && keys[row] != invStockBST3.engineKey.NO_KEY) {
+            return Long.compare(key, keys[row]);
+        }
+        int base = row * ENGINE_WIDTH;
+        for (int i = 0; i < ENGINE_WIDTH; i++) {
+            int a = i < engineBytes.length ? engineBytes[i] & 0xFF : 0;
+            int b = engines.get(base + i) & 0xFF;
+            if (a != b) {
+                return a - b;
+            }
+            if (a == 0) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    // compares the engine numbers of two rows, the bytes are compared where they are in the column
+    private int compareRows(int a, int b) {
+        if (keys[a] != invStockBST3.engineKey.NO_KEY && keys[b] != invStockBST3.engineKey.NO_KEY) {
+            return Long.compare(keys[a], keys[b]);
+        }
+        int baseA = a * ENGINE_WIDTH;
+        int baseB = b * ENGINE_WIDTH;
+        for (int i = 0; i < ENGINE_WIDTH; i++) {
+            int byteA = engines.get(baseA + i) & 0xFF;
+            int byteB = engines.get(baseB + i) & 0xFF;
+            if (byteA != byteB) {
+                return byteA - byteB;
+            }
+            if (byteA == 0) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    // AVL insert and delete on row ids, balanced by index
+    private int insert(int node, int row) {
+        if (node == NONE) {
+            return row;
+        }
+        if (compareRows(row, node) < 0) {
+            return index.balance(node, insert(left[node], row), right[node]);
+        }
+        return index.balance(node, left[node], insert(right[node], row));
+    }
+
+    private int delete(int node, int row) {
+        if (node == NONE) {
+            return NONE;
+        }
+        if (node != row) {
+            if (compareRows(row, node) < 0) {
+                return index.balance(node, delete(left[node], row), right[node]);
+            }
+            return index.balance(node, left[node], delete(right[node], row));
+        }
+        // the in-order successor takes the place of the deleted row
+        return index.unlink(node);
+    }
+
+    // takes a row from the free list, or the next unused row
+    private int allocateRow() {
+        if (freeRows != NONE) {
+            int row = freeRows;
+            freeRows = left[row];
+            return row;
+        }
+        if (rowCount == capacity) {
+            allocate(capacity * 2);
+        }
+        return rowCount++;
+    }
+
+    // (re)allocates every column with room for the given number of rows, keeping the existing rows
+    // a direct ByteBuffer holds at most 2 GB, which caps the engine number column at about 130 million rows
+    private void allocate(int newCapacity) {
+        engines = grow(engines, newCapacity * ENGINE_WIDTH);
+        dates = grow(dates, newCapacity * 4);
+        brands = grow(brands, newCapacity * 2);
+        stockLabels = grow(stockLabels, newCapacity * 2);
+        statuses = grow(statuses, newCapacity * 2);
+
+        keys = keys == null ? new long[newCapacity] : Arrays.copyOf(keys, newCapacity);
+        left = left == null ? new int[newCapacity] : Arrays.copyOf(left, newCapacity);
+        right = right == null ? new int[newCapacity] : Arrays.copyOf(right, newCapacity);
+        heights = heights == null ? new byte[newCapacity] : Arrays.copyOf(heights, newCapacity);
+        capacity = newCapacity;
+    }
+
+    private static ByteBuffer grow(ByteBuffer column, int bytes) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        if (column != null) {
+            grown.put(column.duplicate().clear());
+            grown.clear();
+        }
+        return grown;
+    }
+}
@@ -0,0 +1,172 @@
+// packages for memory-mapping the CSV file
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+//more specific packages
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// loads the inventory CSV by memory-mapping the file and parsing it in chunks, one chunk per core
+// chunks always start and end on a line boundary, so each one can be parsed without looking at the others
+class csvLoader {
+    // the first two lines of the inventory CSV are headers
+    static final int HEADER_LINES = 2;
+    // a single mapping can never be larger than 2 GB, so files are mapped one chunk at a time
+    static final long MAX_CHUNK_SIZE = 64L * 1024 * 1024;
+    // chunks smaller than this are not worth handing to another core
+    static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    // nodes parsed from the CSV in file order, along with the rows that had to be skipped
+    static class result {
+        final List<invStockBST3.treeNode> nodes = new ArrayList<>();
+        final List<String> invalidRows = new ArrayList<>();
+        // size of the file that was parsed
+        long bytes;
+    }
+
+    // callback for the rows of a chunk, given the parser positioned on a valid row
+    interface rowVisitor {
+        void row(csvRowParser parser, ByteBuffer buffer);
+
+        void invalidRow(String row);
+    }
+
+    // method to parse every data row of a CSV file
+    static result load(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            List<long[]> chunks = split(channel);
+
+            // each chunk is parsed on its own core, and the results are combined in file order
+            List<result> parts;
+            try {
+                parts = chunks.parallelStream()
+                        .map(chunk -> parseChunk(channel, chunk[0], chunk[1]))
+                        .collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            result combined = new result();
+            for (result part : parts) {
+                combined.nodes.addAll(part.nodes);
+                combined.invalidRows.addAll(part.invalidRows);
+            }
+            combined.bytes = channel.size();
+            return combined;
+        }
+    }
+
+    // method to go through every data row of a CSV file on the calling thread, one mapped chunk at a time
+    // nothing is collected, the visitor decides what to keep from each row
+    static void forEachRow(String filename, rowVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            for (long[] chunk : split(channel)) {
+                visitChunk(channel, chunk[0], chunk[1], visitor);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // skips the header lines, then splits the rest of the file into chunks of roughly equal size
+    // that end right after a newline
+    private static List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long start = 0;
+        for (int i = 0; i < HEADER_LINES; i++) {
+            start = nextLine(channel, start, size);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        long chunkSize = (size - start) / (cores * 4L) + 1;
+        chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+
+        List<long[]> chunks = new ArrayList<>();
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : nextLine(channel, start + chunkSize, size);
+            chunks.add(new long[] {start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    // returns the position right after the next newline at or after the given position
+    private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // parses one chunk of the file into nodes
+    private static result parseChunk(FileChannel channel, long start, long end) {
+        result part = new result();
+        visitChunk(channel, start, end, new rowVisitor() {
+            @Override
+            public void row(csvRowParser parser, ByteBuffer buffer) {
+                // the date is parsed straight into an epoch day, rows without a valid date are skipped
+                int date = parser.dateField(buffer, 0);
+                if (date == invStockBST3.stockDate.INVALID) {
+                    invalidRow(parser.row(buffer));
+                    return;
+                }
+                // stock label, brand and status repeat a lot, so each distinct value is shared
+                String stockLabel = parser.sharedField(buffer, 1);
+                String brand = parser.sharedField(buffer, 2);
+                String engineNumber = parser.field(buffer, 3);
+                String status = parser.sharedField(buffer, 4);
+
+                // the key is packed here too, so that work is also spread across the cores
+                long key = invStockBST3.engineKey.pack(engineNumber);
+                part.nodes.add(new invStockBST3.treeNode(date, stockLabel, brand, engineNumber, status, key));
+            }
+
+            @Override
+            public void invalidRow(String row) {
+                part.invalidRows.add(row);
+            }
+        });
+        return part;
+    }
+
+    // maps one chunk of the file and hands every line in it to the visitor
+    private static void visitChunk(FileChannel channel, long start, long end, rowVisitor visitor) {
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // rows are parsed straight from the mapped bytes, only the kept fields become Strings
+        csvRowParser parser = new csvRowParser();
+        int length = buffer.limit();
+        int position = 0;
+        while (position < length) {
+            position = parser.parse(buffer, position, length);
+
+            //checks if there are enough columns (there are always five)
+            if (parser.isValid()) {
+                visitor.row(parser, buffer);
+            } else {
+                visitor.invalidRow(parser.row(buffer));
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+// packages for reading rows straight out of the mapped CSV bytes
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// parses CSV rows directly from bytes without going through String.split
+// commas are found and fields are trimmed by position only, so nothing is allocated until a field is kept
+// quoted fields may contain commas and escaped quotes (""), but not line breaks
+// one parser is used per thread, because it reuses its buffers from row to row
+class csvRowParser {
+    // the inventory CSV always has five columns
+    static final int COLUMNS = 5;
+
+    // start and end (exclusive) of each kept field after trimming
+    private final int[] starts = new int[COLUMNS];
+    private final int[] ends = new int[COLUMNS];
+    // whether each kept field contains escaped quotes
+    private final boolean[] escaped = new boolean[COLUMNS];
+    // number of columns in the row, not counting empty columns at the end (same as String.split)
+    private int columns;
+    // start and end of the whole row, without the line break
+    private int rowStart, rowEnd;
+
+    // repeated values such as brands and statuses are materialized once per column
+    private final valueCache[] caches = new valueCache[COLUMNS];
+    // month and day while a date field is being parsed
+    private final int[] datePartsScratch = new int[2];
+    // scratch space for copying bytes out of the buffer
+    private byte[] scratch = new byte[256];
+
+    csvRowParser() {
+        for (int i = 0; i < COLUMNS; i++) {
+            caches[i] = new valueCache();
+        }
+    }
+
+    // parses the row that starts at position and returns the position where the next row starts
+    int parse(ByteBuffer buffer, int position, int limit) {
+        rowStart = position;
+        columns = 0;
+        int column = 0;
+        int fieldStart = position;
+        boolean inQuotes = false;
+        boolean fieldQuoted = false;
+        boolean fieldEscaped = false;
+        int i = position;
+
+        while (true) {
+            byte b = i < limit ? buffer.get(i) : (byte) '\n';
+            if (inQuotes) {
+                if (b == '"') {
+                    // a doubled quote is an escaped quote, a single one closes the field
+                    if (i + 1 < limit && buffer.get(i + 1) == '"') {
+                        fieldEscaped = true;
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else if (b == '\n') {
+                    // an unterminated quote ends at the line break
+                    inQuotes = false;
+                    continue;
+                }
+            } else if (b == '"' && isBlank(buffer, fieldStart, i)) {
+                inQuotes = true;
+                fieldQuoted = true;
+            } else if (b == ',' || b == '\n') {
+                int fieldEnd = i;
+                if (b == '\n' && fieldEnd > fieldStart && buffer.get(fieldEnd - 1) == '\r') {
+                    fieldEnd--;
+                }
+                if (fieldEnd > fieldStart) {
+                    columns = column + 1;
+                }
+                if (column < COLUMNS) {
+                    keepField(buffer, column, fieldStart, fieldEnd, fieldQuoted, fieldEscaped);
+                }
+                column++;
+
+                if (b == '\n') {
+                    rowEnd = fieldEnd;
+                    return Math.min(i + 1, limit);
+                }
+                fieldStart = i + 1;
+                fieldQuoted = false;
+                fieldEscaped = false;
+            }
+            i++;
+        }
+    }
+
+    // true if the last parsed row had all five columns
+    boolean isValid() {
+        return columns >= COLUMNS;
+    }
+
+    // materializes a field of the last parsed row
+    String field(ByteBuffer buffer, int column) {
+        int length = ends[column] - starts[column];
+        if (escaped[column]) {
+            return unescape(buffer, starts[column], ends[column]);
+        }
+        return new String(copy(buffer, starts[column], length), 0, length, StandardCharsets.UTF_8);
+    }
+
+    // parses a date field in M/d/yyyy format straight from the bytes into an epoch day
+    // returns invStockBST3.stockDate.INVALID if the field is not a valid date
+    int dateField(ByteBuffer buffer, int column) {
+        if (escaped[column]) {
+            return invStockBST3.stockDate.INVALID;
+        }
+        int[] parts = datePartsScratch;
+        int part = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = starts[column]; i < ends[column]; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9' && digits < 9) {
+                value = value * 10 + (b - '0');
+                digits++;
+            } else if (b == '/' && digits > 0 && part < 2) {
+                parts[part++] = value;
+                value = 0;
+                digits = 0;
+            } else {
+                return invStockBST3.stockDate.INVALID;
+            }
+        }
+        if (part != 2 || digits == 0) {
+            return invStockBST3.stockDate.INVALID;
+        }
+        return invStockBST3.stockDate.of(value, parts[0], parts[1]);
+    }
+
+    // same as field, but returns the same String object every time a column repeats a value
+    // meant for low-cardinality columns such as brand and status
+    String sharedField(ByteBuffer buffer, int column) {
+        if (escaped[column]) {
+            return field(buffer, column);
+        }
+        return caches[column].get(buffer, starts[column], ends[column]);
+    }
+
+    // materializes the whole row, used to report invalid rows
+    String row(ByteBuffer buffer) {
+        int length = rowEnd - rowStart;
+        return new String(copy(buffer, rowStart, length), 0, length, StandardCharsets.UTF_8);
+    }
+
+    // records the trimmed bounds of a field, without its surrounding quotes
+    private void keepField(ByteBuffer buffer, int column, int start, int end, boolean isQuoted, boolean isEscaped) {
+        while (start < end && isSpace(buffer.get(start))) start++;
+        while (end > start && isSpace(buffer.get(end - 1))) end--;
+        if (isQuoted && start < end && buffer.get(start) == '"') {
+            start++;
+            if (end > start && buffer.get(end - 1) == '"') {
+                end--;
+            }
+        }
+        starts[column] = start;
+        ends[column] = end;
+        escaped[column] = isEscaped;
+    }
+
+    // turns every doubled quote in a quoted field back into a single quote
+    private String unescape(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = copy(buffer, start, end - start);
+        int length = 0;
+        for (int i = 0; i < end - start; i++) {
+            bytes[length++] = bytes[i];
+            if (bytes[i] == '"' && i + 1 < end - start && bytes[i + 1] == '"') {
+                i++;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // copies bytes out of the buffer into the scratch array
+    private byte[] copy(ByteBuffer buffer, int start, int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+        return scratch;
+    }
+
+    private static boolean isBlank(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isSpace(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // same characters that String.trim removes, for the ASCII range
+    private static boolean isSpace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    // small open-addressing table of the Strings already materialized for a column
+    // lookups hash and compare the bytes in place, so a repeated value costs no allocation
+    static class valueCache {
+        // once the table is full, new values are simply not cached anymore
+        static final int CAPACITY = 1024;
+
+        private final byte[][] keys = new byte[CAPACITY][];
+        private final String[] values = new String[CAPACITY];
+        private int count;
+
+        String get(ByteBuffer buffer, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+
+            int slot = (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+            while (keys[slot] != null) {
+                if (matches(keys[slot], buffer, start, end)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & (CAPACITY - 1);
+            }
+
+            int length = end - start;
+            byte[] bytes = new byte[length];
+            buffer.get(start, bytes, 0, length);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            // keeps the table at most half full so probing stays short
+            if (count < CAPACITY / 2) {
+                keys[slot] = bytes;
+                values[slot] = value;
+                count++;
+            }
+            return value;
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+            if (key.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
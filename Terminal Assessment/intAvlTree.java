@@ -0,0 +1,77 @@
+// the int version of avlTree, for trees whose nodes are row ids that index primitive arrays, like the index of
+// columnarInventory; the methods and the balancing are the same as in avlTree, only nothing is ever boxed
+// EMPTY is the empty subtree, like null in avlTree
+abstract class intAvlTree {
+    static final int EMPTY = -1;
+
+    abstract int left(int node);
+
+    abstract int right(int node);
+
+    // returns the height of a subtree, an empty subtree has a height of zero
+    abstract int height(int node);
+
+    // sets the children of a node and recalculates its height from theirs, returns the node
+    abstract int link(int node, int newLeft, int newRight);
+
+    // returns a node with new children after restoring the AVL property, see avlTree.balance
+    final int balance(int node, int newLeft, int newRight) {
+        int balance = height(newLeft) - height(newRight);
+
+        // left side is too tall
+        if (balance > 1) {
+            // left-right case: rotate the left child first so it becomes a left-left case
+            if (height(left(newLeft)) < height(right(newLeft))) {
+                newLeft = rotateLeft(newLeft);
+            }
+            return rotateRight(link(node, newLeft, newRight));
+        }
+
+        // right side is too tall
+        if (balance < -1) {
+            // right-left case: rotate the right child first so it becomes a right-right case
+            if (height(right(newRight)) < height(left(newRight))) {
+                newRight = rotateRight(newRight);
+            }
+            return rotateLeft(link(node, newLeft, newRight));
+        }
+
+        return link(node, newLeft, newRight);
+    }
+
+    // rotates a subtree to the right and returns its new root, see avlTree.rotateRight
+    final int rotateRight(int node) {
+        int pivot = left(node);
+        return link(pivot, left(pivot), link(node, right(pivot), right(node)));
+    }
+
+    // rotates a subtree to the left and returns its new root (mirror image of rotateRight)
+    final int rotateLeft(int node) {
+        int pivot = right(node);
+        return link(pivot, link(node, left(node), left(pivot)), right(pivot));
+    }
+
+    // returns the root of a subtree without the node at its root, which is being deleted
+    // the in-order successor takes its place, see avlTree.unlink
+    final int unlink(int node) {
+        if (left(node) == EMPTY) return right(node);
+        if (right(node) == EMPTY) return left(node);
+        return balance(min(right(node)), left(node), removeMin(right(node)));
+    }
+
+    // returns the root of a subtree after its minimum node has been removed and the subtree rebalanced
+    final int removeMin(int node) {
+        if (left(node) == EMPTY) {
+            return right(node);
+        }
+        return balance(node, removeMin(left(node)), right(node));
+    }
+
+    // returns the minimum node of a subtree
+    final int min(int node) {
+        while (left(node) != EMPTY) {
+            node = left(node);
+        }
+        return node;
+    }
+}
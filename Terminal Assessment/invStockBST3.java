@@ -1,27 +1,56 @@
 // package that handles fundamental input and output operations in Java
 import java.io.*;
 //more specific packages
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
-
-public class invStockBST3 {
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+public class invStockBST3 implements stockInventory {
     // node class for the binary search tree (BST)
     static class treeNode {
         //initializing stock variables
-        String date;
+        // the date is kept as an epoch day (days since 1/1/1970) and only formatted as M/d/yyyy for output
+        int date;
         String stockLabel;
         String brand;
         String engineNumber;
         String status;
-        // used for the hash code of the engine number
-        int key;
+        // engine number packed into a long by engineKey (engineKey.NO_KEY if it cannot be packed)
+        long key;
         // binary search tree nodes all have left and right
         treeNode left, right;
+        // height of the subtree rooted at this node, used to keep the AVL tree balanced
+        int height;
 
-        treeNode(String date, String stockLabel, String brand, String engineNumber, String status, int key) {
+        treeNode(int date, String stockLabel, String brand, String engineNumber, String status, long key) {
             this.date = date;
             this.stockLabel = stockLabel;
             this.brand = brand;
@@ -29,475 +58,2038 @@ public class invStockBST3 {
             this.status = status;
             this.key = key;
             this.left = this.right = null;
+            this.height = 1;
         }
 
         @Override
         public String toString() {
-            return "Date: " + date + ", Stock Label: " + stockLabel + ", Brand: " + brand + ", Engine Number: " + engineNumber + ", Status: " + status;
+            return "Date: " + stockDate.format(date) + ", Stock Label: " + stockLabel + ", Brand: " + brand + ", Engine Number: " + engineNumber + ", Status: " + status;
+        }
+    }
+
+    // AVL balancing of the BST, see avlTree
+    // the nodes are changed in place, so link sets the children and the height of the node itself
+    private static final avlTree<treeNode> AVL = new avlTree<treeNode>() {
+        @Override
+        treeNode left(treeNode node) {
+            return node.left;
+        }
+
+        @Override
+        treeNode right(treeNode node) {
+            return node.right;
+        }
+
+        @Override
+        int height(treeNode node) {
+            return node == null ? 0 : node.height;
+        }
+
+        @Override
+        treeNode link(treeNode node, treeNode newLeft, treeNode newRight) {
+            node.left = newLeft;
+            node.right = newRight;
+            node.height = 1 + Math.max(height(newLeft), height(newRight));
+            return node;
+        }
+    };
+
+    // orders nodes the same way as the BST, by engine number
+    static final Comparator<treeNode> NODE_ORDER = (a, b) -> engineKey.compare(a.key, a.engineNumber, b.key, b.engineNumber);
+
+    // secondary index that maps a field value to the set of nodes that have that value
+    // each set is ordered by engine number, so matches are listed in the same order as the BST
+    // looking up a value costs O(log n + matches) instead of a traversal of the whole tree
+    static class secondaryIndex<V extends Comparable<V>> {
+        private final TreeMap<V, TreeSet<treeNode>> entries = new TreeMap<>();
+
+        void add(V value, treeNode node) {
+            entries.computeIfAbsent(value, v -> new TreeSet<>(NODE_ORDER)).add(node);
+        }
+
+        void remove(V value, treeNode node) {
+            TreeSet<treeNode> nodes = entries.get(value);
+            if (nodes != null) {
+                nodes.remove(node);
+                // drops the value once no node has it anymore
+                if (nodes.isEmpty()) {
+                    entries.remove(value);
+                }
+            }
+        }
+
+        Collection<treeNode> get(V value) {
+            TreeSet<treeNode> nodes = entries.get(value);
+            return nodes == null ? Collections.emptySet() : Collections.unmodifiableSet(nodes);
+        }
+
+        // replaces the contents of the index with the given nodes
+        // the nodes are grouped by value in a HashMap first, so the TreeMap of values is only built once per value
+        // each TreeSet is still filled one add at a time, so a rebuild costs O(n log n)
+        void rebuild(Iterable<treeNode> nodes, Function<treeNode, V> field) {
+            Map<V, List<treeNode>> runs = new HashMap<>();
+            for (treeNode node : nodes) {
+                runs.computeIfAbsent(field.apply(node), v -> new ArrayList<>()).add(node);
+            }
+
+            entries.clear();
+            for (Map.Entry<V, List<treeNode>> run : runs.entrySet()) {
+                TreeSet<treeNode> set = new TreeSet<>(NODE_ORDER);
+                set.addAll(run.getValue());
+                entries.put(run.getKey(), set);
+            }
+        }
+
+        // number of distinct values in the index
+        int size() {
+            return entries.size();
+        }
+
+        // every indexed node, ordered by value and then by engine number
+        Iterable<treeNode> values() {
+            return () -> entries.values().stream().flatMap(TreeSet::stream).iterator();
+        }
+
+        // nodes with a value between from and to (both inclusive), ordered by value and then by engine number
+        // costs O(log n) to find the first value, then O(1) per match
+        Iterable<treeNode> range(V from, V to) {
+            if (from.compareTo(to) > 0) {
+                return Collections.emptyList();
+            }
+            return () -> entries.subMap(from, true, to, true).values().stream().flatMap(TreeSet::stream).iterator();
+        }
+    }
+
+    // no AVL tree with up to 2^31 nodes is taller than about 45, so a longer path means the links were
+    // read while a writer was changing them
+    static final int MAX_HEIGHT = 64;
+
+    static void checkDepth(int depth) {
+        if (depth > MAX_HEIGHT) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    // iterator for an in-order traversal of the BST
+    // uses an explicit stack instead of recursion, so very large trees cannot overflow the call stack
+    // the stack never holds more nodes than the height of the tree
+    // during an optimistic read the links can be seen half-way through a rotation, so a path longer than
+    // any AVL tree can have is reported as a ConcurrentModificationException instead of being followed forever
+    static class inOrderIterator implements Iterator<treeNode> {
+        private final ArrayDeque<treeNode> stack = new ArrayDeque<>();
+        // the traversal stops at the first node this rejects, null means it runs to the end
+        private final Predicate<treeNode> within;
+
+        inOrderIterator(treeNode root) {
+            this.within = null;
+            pushLeft(root);
+        }
+
+        // starts at the first node whose engine number is at least from, and stops at the first node outside within
+        // only the path down to the starting node is visited, so reaching it costs O(log n)
+        inOrderIterator(treeNode root, String from, Predicate<treeNode> within) {
+            this.within = within;
+            long fromKey = engineKey.pack(from);
+            treeNode node = root;
+            for (int depth = 0; node != null; depth++) {
+                checkDepth(depth);
+                if (engineKey.compare(node.key, node.engineNumber, fromKey, from) >= 0) {
+                    stack.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        // pushes a node and its chain of left children, the smallest one ends up on top
+        private void pushLeft(treeNode node) {
+            while (node != null) {
+                checkDepth(stack.size());
+                stack.push(node);
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty() && (within == null || within.test(stack.peek()));
+        }
+
+        @Override
+        public treeNode next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            treeNode node = stack.pop();
+            pushLeft(node.right);
+            return node;
         }
     }
 
+    // secondary indexes for the searchable fields other than the engine number
+    // the date index is ordered by epoch day, so it also answers date range searches
+    private final secondaryIndex<Integer> dateIndex = new secondaryIndex<>();
+    private final secondaryIndex<String> stockLabelIndex = new secondaryIndex<>();
+    private final secondaryIndex<String> brandIndex = new secondaryIndex<>();
+    private final secondaryIndex<String> statusIndex = new secondaryIndex<>();
+    // results of recent searches, dropped whenever a node they match is added, deleted or edited
+    private final searchCache cache = new searchCache();
+
+    // header lines used when writing to a CSV file that does not exist yet
+    static final List<String> DEFAULT_HEADERS = List.of(
+            "Date when the stock is entered into inventory,Status of the stock in relation to previous month's inventory data,"
+                    + "Stock's brand,Stock's Engine number,Stock's purchase status",
+            "Date Entered,Stock Label,Brand,Engine Number,Status");
+
     // root of the BST
+    // the tree is an AVL tree, so the heights of the two subtrees of any node differ by at most one
+    // this keeps add, search, delete and edit at O(log n) regardless of the order the rows arrive in
     private treeNode root;
+    // number of nodes in the BST
+    private int size;
+    // node unlinked by the last call to deleteRec, null if there was no match
+    private treeNode removed;
+
+    // change log of the CSV file that was loaded, and that file
+    // the log is written to the CSV (a checkpoint) after this many changes
+    static final int CHECKPOINT_INTERVAL = 10_000;
+    private inventoryLog log;
+    private Path logTarget;
+
+    // true once the inventory has been sorted by brand
+    private boolean sortedByBrand;
+
+    // guards the BST, the secondary indexes, the change log and the fields above
+    // writers are serialized by the write lock; readers first try an optimistic read, which takes no lock at all,
+    // and only fall back to the shared read lock if a writer changed something in the meantime
+    // StampedLock is not reentrant, so only the public methods lock, and the private helpers expect the caller
+    // to hold the right lock already
+    private final StampedLock lock = new StampedLock();
+    // an optimistic traversal is validated every this many nodes, so one that a writer got in the way of stops early
+    static final int VALIDATE_INTERVAL = 1024;
+
+    // how long each public operation takes, shown by Show Statistics and through JMX
+    private final inventoryStats stats = new inventoryStats(this::gauges);
+
+    // read-only action that runs under a stamp of the lock
+    // the stamp is passed in so long traversals can check it along the way
+    interface readAction<T> {
+        T run(long stamp);
+    }
 
-    // method to convert engine number to a numeric key using hashCode function
-    // BSTs are typically number-based, so the strings are converted to numbers
-    public int convertKey(String engineNumber) {
-        return engineNumber.hashCode();
+    // what happened to one item of a batch
+    // NOT_LOGGED means the change could not be written to the change log, so it was not made
+    enum outcome { ADDED, UPDATED, DELETED, DUPLICATE, NOT_FOUND, INVALID_DATE, NOT_LOGGED }
+
+    // result of every item of a batch, in the order the items were given
+    static class batchReport {
+        final String[] engineNumbers;
+        final outcome[] outcomes;
+
+        batchReport(String[] engineNumbers, outcome[] outcomes) {
+            this.engineNumbers = engineNumbers;
+            this.outcomes = outcomes;
+        }
+
+        int size() {
+            return outcomes.length;
+        }
+
+        // number of items that ended with an outcome
+        int count(outcome result) {
+            int count = 0;
+            for (outcome itemResult : outcomes) {
+                if (itemResult == result) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        // summary such as "3 item(s): 2 added, 1 duplicate"
+        @Override
+        public String toString() {
+            StringBuilder summary = new StringBuilder().append(size()).append(" item(s)");
+            String separator = ": ";
+            for (outcome result : outcome.values()) {
+                int count = count(result);
+                if (count > 0) {
+                    summary.append(separator).append(count).append(' ')
+                            .append(result.name().toLowerCase().replace('_', ' '));
+                    separator = ", ";
+                }
+            }
+            return summary.toString();
+        }
     }
 
-    // method to load data from CSV into the BST
-    public void loadFromCSV(String filename) {
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            int lineCount = 0;
+    // positions of a batch ordered by engine number, with the key of every engine number packed once
+    // the sort is stable, so positions with the same engine number keep the order they were given in
+    private static class sortedBatch {
+        final String[] engineNumbers;
+        final long[] keys;
+        final Integer[] order;
+
+        sortedBatch(String[] engineNumbers) {
+            this.engineNumbers = engineNumbers;
+            keys = new long[engineNumbers.length];
+            order = new Integer[engineNumbers.length];
+            for (int i = 0; i < engineNumbers.length; i++) {
+                keys[i] = engineKey.pack(engineNumbers[i]);
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> engineKey.compare(keys[a], engineNumbers[a], keys[b], engineNumbers[b]));
+        }
+
+        int length() {
+            return order.length;
+        }
 
-            while ((line = br.readLine()) != null) {
-                lineCount++;
+        // compares the engine number at a sorted position with the engine number of a node
+        int compare(int position, treeNode node) {
+            int i = order[position];
+            return engineKey.compare(keys[i], engineNumbers[i], node.key, node.engineNumber);
+        }
 
-                // skips the first two header lines
-                if (lineCount <= 2) {
-                    continue;
+        // returns true if the engine number at a sorted position is the same as the one before it
+        boolean repeats(int position) {
+            if (position == 0) {
+                return false;
+            }
+            int i = order[position - 1];
+            int j = order[position];
+            return engineKey.compare(keys[i], engineNumbers[i], keys[j], engineNumbers[j]) == 0;
+        }
+    }
+
+    // new values for one item of updateAll
+    // a date of stockDate.INVALID or a null value keeps the current value, like in editItem
+    static class itemUpdate {
+        final String engineNumber;
+        final int date;
+        final String stockLabel;
+        final String brand;
+        final String status;
+
+        itemUpdate(String engineNumber, int date, String stockLabel, String brand, String status) {
+            this.engineNumber = engineNumber;
+            this.date = date;
+            this.stockLabel = stockLabel;
+            this.brand = brand;
+            this.status = status;
+        }
+    }
+
+    // helper for stock dates, which are entered and displayed in M/d/yyyy format but stored as epoch days
+    static class stockDate {
+        // returned when a date cannot be parsed
+        static final int INVALID = Integer.MIN_VALUE;
+
+        // parses a date in M/d/yyyy format into an epoch day, or returns INVALID
+        static int parse(String date) {
+            String[] parts = date.trim().split("/");
+            if (parts.length != 3) {
+                return INVALID;
+            }
+            try {
+                return of(Integer.parseInt(parts[2]), Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+            } catch (NumberFormatException e) {
+                return INVALID;
+            }
+        }
+
+        // returns the epoch day of a calendar date, or INVALID if there is no such date
+        // years far enough away give an epoch day that does not fit in an int, those are INVALID as well
+        static int of(int year, int month, int day) {
+            long epochDay;
+            try {
+                epochDay = LocalDate.of(year, month, day).toEpochDay();
+            } catch (DateTimeException e) {
+                return INVALID;
+            }
+            if (epochDay <= INVALID || epochDay > Integer.MAX_VALUE) {
+                return INVALID;
+            }
+            return (int) epochDay;
+        }
+
+        // formats an epoch day in M/d/yyyy format
+        static String format(int epochDay) {
+            return appendTo(new StringBuilder(10), epochDay).toString();
+        }
+
+        // appends an epoch day in M/d/yyyy format
+        static StringBuilder appendTo(StringBuilder out, int epochDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            return out.append(date.getMonthValue()).append('/').append(date.getDayOfMonth()).append('/').append(date.getYear());
+        }
+    }
+
+    // codec that packs an engine number into an order-preserving long
+    // engine numbers like AITLTSJUK2 only use 0-9 and A-Z, so each character fits in a base-37 digit
+    // (digit 0 is reserved as padding) and up to 12 characters fit in a long
+    // unlike hashCode, two different engine numbers never get the same key
+    static class engineKey {
+        // key given to engine numbers that are too long or contain other characters
+        static final long NO_KEY = -1L;
+        static final int RADIX = 37;
+        static final int MAX_LENGTH = 12;
+
+        // packs the engine number, or returns NO_KEY if it does not fit
+        static long pack(String engineNumber) {
+            int length = engineNumber.length();
+            if (length > MAX_LENGTH) {
+                return NO_KEY;
+            }
+
+            long packed = 0;
+            for (int i = 0; i < MAX_LENGTH; i++) {
+                int digit = 0;
+                if (i < length) {
+                    digit = digit(engineNumber.charAt(i));
+                    if (digit < 0) {
+                        return NO_KEY;
+                    }
                 }
+                packed = packed * RADIX + digit;
+            }
+            return packed;
+        }
 
-                //splits each line by comma
-                String[] values = line.split(",");
-                //checks if there are enough columns (there are always five)
-                if (values.length < 5) {
-                    System.out.println("Skipping invalid row: " + line);
-                    continue;
+        // turns a packed key back into the engine number
+        // returns null for a number that pack can never return, such as one above 12 digits, or with an empty
+        // digit between two characters, so such a number can never stand for another engine number
+        static String unpack(long key) {
+            if (key < 0) {
+                return null;
+            }
+            long packed = key;
+            char[] chars = new char[MAX_LENGTH];
+            int length = 0;
+            for (int i = MAX_LENGTH - 1; i >= 0; i--) {
+                int digit = (int) (packed % RADIX);
+                packed /= RADIX;
+                if (digit != 0 && length == 0) {
+                    length = i + 1;
                 }
+                chars[i] = digit <= 10 ? (char) ('0' + digit - 1) : (char) ('A' + digit - 11);
+            }
+            String engineNumber = new String(chars, 0, length);
+            return pack(engineNumber) == key ? engineNumber : null;
+        }
 
-                String date = values[0].trim();
-                String stockLabel = values[1].trim();
-                String brand = values[2].trim();
-                String engineNumber = values[3].trim();
-                String status = values[4].trim();
+        // digits come before letters, just like in ASCII, so packed keys sort the same way as the strings
+        private static int digit(char c) {
+            if (c >= '0' && c <= '9') return c - '0' + 1;
+            if (c >= 'A' && c <= 'Z') return c - 'A' + 11;
+            return -1;
+        }
 
-                // adds the item to the BST (specifically for CSV)
-                addItemCSV(date, stockLabel, brand, engineNumber, status);
+        // compares two engine numbers using their keys when both could be packed
+        // otherwise falls back to comparing the full strings, which gives the same order
+        static int compare(long keyA, String engineA, long keyB, String engineB) {
+            if (keyA != NO_KEY && keyB != NO_KEY) {
+                return Long.compare(keyA, keyB);
             }
+            return engineA.compareTo(engineB);
+        }
+    }
 
+    // method to convert engine number to a numeric key
+    // BSTs are typically number-based, so the strings are converted to numbers
+    public long convertKey(String engineNumber) {
+        return engineKey.pack(engineNumber);
+    }
+
+    // runs a read-only action without taking a lock, and runs it again under the read lock if a writer
+    // changed the BST while it was running
+    // anything the action returns has to be copied out of the nodes, since they may change right afterwards
+    private <T> T optimisticRead(readAction<T> action) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = action.run(stamp);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // the action saw the BST half-way through a change, so its result is thrown away either way
+            }
+        }
+        return lockedRead(action);
+    }
+
+    // runs a read-only action under the shared read lock
+    // used for the secondary indexes, whose TreeMaps cannot be read while they are being changed
+    private <T> T lockedRead(readAction<T> action) {
+        long stamp = lock.readLock();
+        try {
+            return action.run(stamp);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // throws once an optimistic read has been overtaken by a writer, checked every VALIDATE_INTERVAL nodes
+    private void validate(long stamp, int visited) {
+        if (visited % VALIDATE_INTERVAL == 0 && !lock.validate(stamp)) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    // method to load data from CSV into the BST
+    // the file is memory-mapped and parsed on every core by csvLoader, then the rows are added in file order
+    // the parsing happens before the write lock is taken, so readers are only held up while the BST is rebuilt
+    public void loadFromCSV(String filename) {
+        if (loadCSV(filename)) {
             System.out.println("CSV file loaded successfully.");
+        }
+    }
+
+    // loads a CSV file like loadFromCSV without announcing it, returns false if the file could not be read
+    // shardedInventory loads one file per shard and only announces once every shard is loaded
+    boolean loadCSV(String filename) {
+        long started = System.nanoTime();
+        inventoryEvents.loadEvent event = new inventoryEvents.loadEvent();
+        event.begin();
+        try {
+            csvLoader.result result;
+            try {
+                result = csvLoader.load(filename);
+            } catch (IOException e) {
+                System.err.println("Error reading CSV file: " + e.getMessage());
+                return false;
+            }
+
+            for (String line : result.invalidRows) {
+                System.out.println("Skipping invalid row: " + line);
+            }
+
+            long stamp = lock.writeLock();
+            try {
+                // adds the parsed items to the BST in one batch
+                bulkLoad(result.nodes);
+
+                // changes made after the file was last saved are still in its change log
+                openLog(filename);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = filename;
+                event.rows = result.nodes.size();
+                event.bytes = result.bytes;
+                event.commit();
+            }
+            return true;
+        } finally {
+            stats.record("load", started);
+        }
+    }
+
+    // opens the change log of a CSV file and replays any changes that were not saved to the CSV yet
+    // from then on every add, delete and edit is appended to that log
+    private void openLog(String filename) {
+        closeLog();
+        try {
+            inventoryLog newLog = new inventoryLog(inventoryLog.forCSV(filename));
+            // the log is only attached after the replay, so replayed changes are not logged a second time
+            int recovered = newLog.replay(this::replayChange);
+            log = newLog;
+            logTarget = Paths.get(filename).toAbsolutePath();
+            if (recovered > 0) {
+                System.out.println("Recovered " + recovered + " unsaved change(s) from the change log.");
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening change log: " + e.getMessage());
+        }
+    }
+
+    // helper method that detaches the change log, if there is one
+    private void closeLog() {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Error closing change log: " + e.getMessage());
+        }
+        log = null;
+        logTarget = null;
+    }
+
+    // applies one change read back from the change log
+    private void replayChange(inventoryLog.change entry) {
+        switch (entry.type) {
+            case inventoryLog.ADD:
+                insertItem(new treeNode(entry.date, entry.stockLabel, entry.brand, entry.engineNumber, entry.status,
+                        convertKey(entry.engineNumber)));
+                break;
+            case inventoryLog.DELETE:
+                removeItem(entry.engineNumber);
+                break;
+            case inventoryLog.EDIT:
+                treeNode node = searchNode(root, convertKey(entry.engineNumber), entry.engineNumber);
+                if (node != null) {
+                    updateItem(node, entry.date, entry.stockLabel, entry.brand, entry.status);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // helper method that runs after logged changes have been made
+    // once enough changes have piled up, they are written to the CSV file and the log starts over
+    // the changes are already safe in the log, so a checkpoint that fails is only reported, the next one tries again
+    private void checkpointIfDue() {
+        if (log == null || log.size() < CHECKPOINT_INTERVAL) {
+            return;
+        }
+        try {
+            checkpoint();
         } catch (IOException e) {
-            System.err.println("Error reading CSV file: " + e.getMessage());
+            System.err.println("Error writing checkpoint: " + e.getMessage());
+        }
+    }
+
+    // writes changes to the change log as one record, forced to disk, before the caller makes them
+    // if this throws, nothing was logged and the caller must not make any of the changes,
+    // so the inventory never holds a change that would be lost on a restart
+    private void logChanges(changeWriter changes) throws IOException {
+        if (log == null) {
+            return;
+        }
+        log.startBatch();
+        try {
+            changes.writeTo(log);
+        } catch (IOException | RuntimeException e) {
+            log.cancelBatch();
+            throw e;
+        }
+        log.finishBatch();
+    }
+
+    // the changes that logChanges writes
+    private interface changeWriter {
+        void writeTo(inventoryLog log) throws IOException;
+    }
+
+    // writes the whole inventory to the CSV file that the change log belongs to, then empties the log
+    // the CSV is replaced atomically before the log is emptied, so a crash in between only replays
+    // changes that are already in the CSV, which leaves the inventory the same
+    // the caller holds the write lock, so no change can slip in between the two steps
+    private void checkpoint() throws IOException {
+        long started = System.nanoTime();
+        try {
+            writeCSV(logTarget.toString());
+            log.reset();
+        } finally {
+            stats.record("checkpoint", started);
         }
     }
 
     // method to add an item from the CSV file with all five categories
     // separated from user-side method because they are only expected to input brand and engine number
     public void addItemCSV(String date, String stockLabel, String brand, String engineNumber, String status) {
-        int key = convertKey(engineNumber);
-        treeNode newNode = new treeNode(date, stockLabel, brand, engineNumber, status, key);
+        long started = System.nanoTime();
+        try {
+            // the date is parsed once here and stored as an epoch day
+            int epochDay = stockDate.parse(date);
+            if (epochDay == stockDate.INVALID) {
+                System.out.println("Invalid date (" + date + ") for engine number " + engineNumber + ". Entry not added.");
+                return;
+            }
 
-        if (root == null) {
-            root = newNode;
-        } else {
-            addNode(root, newNode);
+            long key = convertKey(engineNumber);
+            treeNode newNode = new treeNode(epochDay, stockLabel, brand, engineNumber, status, key);
+            addLogged(newNode);
+        } finally {
+            stats.record("add", started);
         }
     }
 
     // method to add an item to the BST from the user side
     public void addItem(String brand, String engineNumber) {
-        // gets the current date in M/D/YYYY format specifically
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("M/d/yyyy");
-        String date = LocalDate.now().format(formatter);
-        // newly added stock is always new and on-hand
-        String stockLabel = "New";
-        String status = "On-hand";
-
-        // assigns a hash code key to the engine number
-        int key = convertKey(engineNumber);
-        treeNode newNode = new treeNode(date, stockLabel, brand, engineNumber, status, key);
-
-        // if root is empty, the new node becomes the root
-        if (root == null) {
-            root = newNode;
-        // otherwise, the node is added to the BST using the addNode method
-        } else {
-            addNode(root, newNode);
+        long started = System.nanoTime();
+        try {
+            // gets the current date as an epoch day
+            int date = (int) LocalDate.now().toEpochDay();
+            // newly added stock is always new and on-hand
+            String stockLabel = "New";
+            String status = "On-hand";
+
+            // assigns a packed key to the engine number
+            long key = convertKey(engineNumber);
+            treeNode newNode = new treeNode(date, stockLabel, brand, engineNumber, status, key);
+
+            // the node is added to the BST using the insertItem method
+            addLogged(newNode);
+        } finally {
+            stats.record("add", started);
         }
     }
 
+    // helper method that records a new item in the change log and then adds it to the BST
+    // prints why if the item was not added
+    private void addLogged(treeNode newNode) {
+        boolean duplicate;
+        long stamp = lock.writeLock();
+        try {
+            duplicate = searchNode(root, newNode.key, newNode.engineNumber) != null;
+            if (!duplicate) {
+                logChanges(changes -> changes.logAdd(newNode.date, newNode.stockLabel, newNode.brand,
+                        newNode.engineNumber, newNode.status));
+                insertItem(newNode);
+                checkpointIfDue();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to change log: " + e.getMessage() + ". Entry not added.");
+            return;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (duplicate) {
+            System.out.println("Duplicate engine number detected: (" + newNode.engineNumber + "). Entry not added.");
+        }
+    }
+
+    // helper method that adds a node to the BST, the add is already in the change log (or being replayed from it)
+    // returns false if the engine number was already in the inventory
+    private boolean insertItem(treeNode newNode) {
+        int before = size;
+        // the addNode method returns the new (rebalanced) root
+        root = addNode(root, newNode);
+        return size != before;
+    }
+
     // helper method to add a node to the BST
-    private void addNode(treeNode root, treeNode newNode) {
+    // returns the root of the subtree after the node has been added and the subtree rebalanced
+    // a duplicate engine number leaves the subtree as it was, which the caller can tell from size
+    private treeNode addNode(treeNode root, treeNode newNode) {
+        // if the subtree is empty, the new node becomes its root
+        if (root == null) {
+            indexNode(newNode);
+            size++;
+            return newNode;
+        }
+
         // BST is separated into left and right nodes
         // if the new node's key is less than the root's key, it goes to the left
         // if the new node's key is greater than the root's key, it goes to the right
-        if (newNode.key < root.key) {
-            if (root.left == null) {
-                root.left = newNode;
-            } else {
-                addNode(root.left, newNode);
+        int cmp = engineKey.compare(newNode.key, newNode.engineNumber, root.key, root.engineNumber);
+        if (cmp < 0) {
+            return AVL.balance(root, addNode(root.left, newNode), root.right);
+        } else if (cmp > 0) {
+            return AVL.balance(root, root.left, addNode(root.right, newNode));
+        }
+        return root;
+    }
+
+    // method to add a batch of parsed items to the BST in one go
+    private void bulkLoad(List<treeNode> nodes) {
+        for (treeNode duplicate : insertAll(nodes)) {
+            System.out.println("Duplicate engine number detected: (" + duplicate.engineNumber + "). Entry not added.");
+        }
+    }
+
+    // helper method that adds a batch of nodes to the BST and returns the ones whose engine number was taken
+    // the batch is sorted by engine number and merged with the nodes already in the BST in a single pass,
+    // which also drops duplicates, and the BST is then rebuilt perfectly balanced from the merged nodes
+    // the merge and the rebuild of the BST cost O(n) plus sorting the batch, instead of one descent from the root per item
+    // the sort is stable, so of two batch nodes with the same engine number the first one is kept
+    private List<treeNode> insertAll(List<treeNode> nodes) {
+        List<treeNode> duplicates = new ArrayList<>();
+
+        // a small batch is cheaper to add one item at a time than to rebuild the whole BST
+        // it is still added in engine number order, so consecutive descents share most of their path
+        if ((long) nodes.size() * AVL.height(root) < size) {
+            List<treeNode> sorted = new ArrayList<>(nodes);
+            sorted.sort(NODE_ORDER);
+            for (treeNode node : sorted) {
+                int before = size;
+                root = addNode(root, node);
+                if (size == before) {
+                    duplicates.add(node);
+                }
             }
-        } else if (newNode.key > root.key) {
-            if (root.right == null) {
-                root.right = newNode;
+            return duplicates;
+        }
+
+        // links the batch into a linkedList through the right pointers and sorts it
+        treeNode head = null;
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            treeNode node = nodes.get(i);
+            node.left = null;
+            node.right = head;
+            node.height = 1;
+            head = node;
+        }
+        head = mergeSortList(head, NODE_ORDER);
+
+        // collects the nodes already in the BST before their links are reused
+        List<treeNode> existing = new ArrayList<>(size);
+        for (treeNode node : inOrder()) {
+            existing.add(node);
+        }
+
+        // merges both sorted sequences, existing nodes win over batch nodes with the same engine number
+        treeNode[] merged = new treeNode[existing.size() + nodes.size()];
+        int count = 0;
+        int i = 0;
+        while (head != null || i < existing.size()) {
+            treeNode next;
+            boolean fromBatch = head != null && (i == existing.size() || NODE_ORDER.compare(head, existing.get(i)) < 0);
+            if (fromBatch) {
+                next = head;
+                head = head.right;
             } else {
-                addNode(root.right, newNode);
+                next = existing.get(i++);
             }
-        } else {
-            System.out.println("Duplicate engine number detected: (" + newNode.engineNumber + "). Entry not added.");
+
+            // duplicates are always next to each other in the merged order
+            if (count > 0 && NODE_ORDER.compare(merged[count - 1], next) == 0) {
+                duplicates.add(next);
+                continue;
+            }
+            merged[count++] = next;
+        }
+
+        size = count;
+        root = AVL.buildBalanced(Arrays.asList(merged), 0, count);
+        // the batch is at least n / log n nodes, so the indexes are rebuilt once in O(n log n) (one TreeSet.add per node)
+        // instead of being added to one node at a time
+        rebuildIndexes();
+        return duplicates;
+    }
+
+    // Merge Sort for a linkedList that is linked through the right pointers
+    // bottom-up, so it uses no recursion: sorted runs of width 1, 2, 4, ... are merged pairwise
+    // the sort is stable, so nodes that compare equal keep the order they had in the list
+    static treeNode mergeSortList(treeNode head, Comparator<treeNode> order) {
+        int length = 0;
+        for (treeNode node = head; node != null; node = node.right) {
+            length++;
         }
+
+        for (int width = 1; width < length; width *= 2) {
+            treeNode remaining = head;
+            treeNode tail = null;
+            head = null;
+
+            while (remaining != null) {
+                // cuts off the next two runs
+                treeNode left = remaining;
+                treeNode right = cutList(left, width);
+                remaining = cutList(right, width);
+
+                // merges them onto the end of the sorted part
+                while (left != null && right != null) {
+                    treeNode next;
+                    if (order.compare(left, right) <= 0) {
+                        next = left;
+                        left = left.right;
+                    } else {
+                        next = right;
+                        right = right.right;
+                    }
+                    if (tail == null) {
+                        head = next;
+                    } else {
+                        tail.right = next;
+                    }
+                    tail = next;
+                }
+
+                // whichever run is left over is already sorted
+                treeNode rest = left != null ? left : right;
+                if (rest != null) {
+                    if (tail == null) {
+                        head = rest;
+                    } else {
+                        tail.right = rest;
+                    }
+                    tail = rest;
+                    while (tail.right != null) {
+                        tail = tail.right;
+                    }
+                }
+            }
+        }
+        return head;
+    }
+
+    // splits a linkedList after the given number of nodes and returns the second part
+    private static treeNode cutList(treeNode head, int count) {
+        for (int i = 1; head != null && i < count; i++) {
+            head = head.right;
+        }
+        if (head == null) {
+            return null;
+        }
+        treeNode rest = head.right;
+        head.right = null;
+        return rest;
+    }
+
+    // adds a node to every secondary index
+    private void indexNode(treeNode node) {
+        cache.invalidate(node);
+        dateIndex.add(node.date, node);
+        stockLabelIndex.add(node.stockLabel, node);
+        brandIndex.add(node.brand, node);
+        statusIndex.add(node.status, node);
+    }
+
+    // rebuilds every secondary index from the nodes of the BST
+    // the indexes do not depend on each other, so each one is rebuilt on its own core
+    private void rebuildIndexes() {
+        cache.clear();
+        List<Runnable> rebuilds = List.of(
+                () -> dateIndex.rebuild(inOrder(), node -> node.date),
+                () -> stockLabelIndex.rebuild(inOrder(), node -> node.stockLabel),
+                () -> brandIndex.rebuild(inOrder(), node -> node.brand),
+                () -> statusIndex.rebuild(inOrder(), node -> node.status));
+        rebuilds.parallelStream().forEach(Runnable::run);
+    }
+
+    // removes a node from every secondary index
+    private void unindexNode(treeNode node) {
+        cache.invalidate(node);
+        dateIndex.remove(node.date, node);
+        stockLabelIndex.remove(node.stockLabel, node);
+        brandIndex.remove(node.brand, node);
+        statusIndex.remove(node.status, node);
+    }
+
+    // method to get the height of the tree
+    // an AVL tree with n nodes is never taller than about 1.44 * log2(n)
+    public int getHeight() {
+        return optimisticRead(stamp -> AVL.height(root));
     }
 
     // method to delete an item based on engine number
     public void deleteItem(String engineNumber) {
-        int key = convertKey(engineNumber);
-        if (searchNode(root, key) != null) {
-            root = deleteRec(root, key);
-            System.out.println("Item with engine number " + engineNumber + " deleted.");
-        } else {
-            System.out.println("Item with engine number " + engineNumber + " not found.");
+        long started = System.nanoTime();
+        inventoryEvents.deleteEvent event = new inventoryEvents.deleteEvent();
+        event.begin();
+        try {
+            // the delete is recorded in the change log before the node is removed
+            boolean deleted = false;
+            IOException failure = null;
+            long stamp = lock.writeLock();
+            try {
+                if (searchNode(root, convertKey(engineNumber), engineNumber) != null) {
+                    logChanges(changes -> changes.logDelete(engineNumber));
+                    deleted = removeItem(engineNumber);
+                    checkpointIfDue();
+                }
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.engineNumber = engineNumber;
+                event.rows = deleted ? 1 : 0;
+                event.commit();
+            }
+
+            if (failure != null) {
+                System.err.println("Error writing to change log: " + failure.getMessage() + ". Item with engine number "
+                        + engineNumber + " not deleted.");
+            } else if (deleted) {
+                System.out.println("Item with engine number " + engineNumber + " deleted.");
+            } else {
+                System.out.println("Item with engine number " + engineNumber + " not found.");
+            }
+        } finally {
+            stats.record("delete", started);
         }
     }
 
+    // helper method that removes an item from the BST, the delete is already in the change log (or being replayed from it)
+    // the search and the removal are one descent, deleteRec reports the node it unlinked in removed
+    // returns false if the engine number was not in the inventory
+    private boolean removeItem(String engineNumber) {
+        long key = convertKey(engineNumber);
+        removed = null;
+        root = deleteRec(root, key, engineNumber);
+        if (removed == null) {
+            return false;
+        }
+        removed = null;
+        return true;
+    }
+
     // recursive function to delete an item from the BST based on key
-    private treeNode deleteRec(treeNode root, int key) {
+    // returns the root of the subtree after the node has been removed and the subtree rebalanced
+    private treeNode deleteRec(treeNode root, long key, String engineNumber) {
         if (root == null) {
             return null;
         }
     
-        if (key < root.key) {
-            root.left = deleteRec(root.left, key);
-        } else if (key > root.key) {
-            root.right = deleteRec(root.right, key);
-        } else {
-            if (root.left == null) return root.right;
-            if (root.right == null) return root.left;
-    
-            treeNode minNode = findMin(root.right);
-            root.date = minNode.date;
-            root.stockLabel = minNode.stockLabel;
-            root.brand = minNode.brand;
-            root.engineNumber = minNode.engineNumber;
-            root.status = minNode.status;
-            root.key = minNode.key;
-            root.right = deleteRec(root.right, minNode.key);
+        int cmp = engineKey.compare(key, engineNumber, root.key, root.engineNumber);
+        if (cmp < 0) {
+            return AVL.balance(root, deleteRec(root.left, key, engineNumber), root.right);
+        } else if (cmp > 0) {
+            return AVL.balance(root, root.left, deleteRec(root.right, key, engineNumber));
         }
-    
-        return root;
+
+        unindexNode(root);
+        size--;
+        removed = root;
+        // the in-order successor takes the place of the deleted node, see avlTree.unlink
+        return AVL.unlink(root);
     }
 
-    // helper function to find the minimum node, which is used to find the in-order successor
-    // the in-order successor is the smallest node in the right subtree
-    private treeNode findMin(treeNode root) {
-        // traverses the left side of the tree because it is smaller, and it always has a smaller value
-        while (root.left != null) {
-            root = root.left;
+    // method to add a batch of items with one write lock, one pass over the BST and one change log record
+    // the nodes become part of the BST, so they should not be used by the caller afterwards
+    // an item with a date of stockDate.INVALID is reported and left out
+    public batchReport addAll(List<treeNode> items) {
+        long started = System.nanoTime();
+        inventoryEvents.batchEvent event = new inventoryEvents.batchEvent();
+        event.begin();
+        try {
+            String[] engineNumbers = new String[items.size()];
+            outcome[] outcomes = new outcome[items.size()];
+            List<treeNode> valid = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                treeNode node = items.get(i);
+                engineNumbers[i] = node.engineNumber;
+                if (node.date == stockDate.INVALID) {
+                    outcomes[i] = outcome.INVALID_DATE;
+                } else {
+                    valid.add(node);
+                }
+            }
+
+            long stamp = lock.writeLock();
+            try {
+                // the outcomes are worked out first, so the adds can be logged before the BST changes
+                Set<treeNode> duplicates = findDuplicates(valid);
+                List<treeNode> added = new ArrayList<>(valid.size());
+                for (int i = 0; i < outcomes.length; i++) {
+                    if (outcomes[i] == null) {
+                        treeNode node = items.get(i);
+                        outcomes[i] = duplicates.contains(node) ? outcome.DUPLICATE : outcome.ADDED;
+                        if (outcomes[i] == outcome.ADDED) {
+                            added.add(node);
+                        }
+                    }
+                }
+                boolean logged = logBatch(outcomes, outcome.ADDED, changes -> {
+                    for (treeNode node : added) {
+                        changes.logAdd(node.date, node.stockLabel, node.brand, node.engineNumber, node.status);
+                    }
+                });
+                if (logged) {
+                    insertAll(added);
+                    checkpointIfDue();
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            batchReport report = new batchReport(engineNumbers, outcomes);
+            commitBatchEvent(event, "add", report, outcome.ADDED);
+            return report;
+        } finally {
+            stats.record("batch.add", started);
         }
-        return root;
     }
 
-    // method to search inventory based on user-defined criteria
-    public void searchInventory() {
-        Scanner scanner = new Scanner(System.in);
+    // method to delete a batch of items with one write lock, one pass over the BST and one change log record
+    // an engine number that appears twice is reported as not found the second time
+    public batchReport deleteAll(List<String> engineNumbers) {
+        long started = System.nanoTime();
+        inventoryEvents.batchEvent event = new inventoryEvents.batchEvent();
+        event.begin();
+        try {
+            sortedBatch batch = new sortedBatch(engineNumbers.toArray(new String[0]));
+            outcome[] outcomes = new outcome[batch.length()];
+
+            long stamp = lock.writeLock();
+            try {
+                // the outcomes are worked out first, so the deletes can be logged before the BST changes
+                treeNode[] nodes = lookup(batch);
+                for (int position = 0; position < batch.length(); position++) {
+                    int i = batch.order[position];
+                    outcomes[i] = nodes[i] != null && !batch.repeats(position) ? outcome.DELETED : outcome.NOT_FOUND;
+                }
+                boolean logged = logBatch(outcomes, outcome.DELETED, changes -> {
+                    for (int i : batch.order) {
+                        if (outcomes[i] == outcome.DELETED) {
+                            changes.logDelete(batch.engineNumbers[i]);
+                        }
+                    }
+                });
+
+                if (!logged) {
+                    // nothing is deleted
+                } else if ((long) batch.length() * AVL.height(root) < size) {
+                    // a small batch is removed one descent at a time, in engine number order
+                    for (int i : batch.order) {
+                        if (outcomes[i] == outcome.DELETED) {
+                            removeItem(batch.engineNumbers[i]);
+                        }
+                    }
+                    checkpointIfDue();
+                } else {
+                    deleteMerged(batch);
+                    checkpointIfDue();
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            batchReport report = new batchReport(batch.engineNumbers, outcomes);
+            commitBatchEvent(event, "delete", report, outcome.DELETED);
+            return report;
+        } finally {
+            stats.record("batch.delete", started);
+        }
+    }
 
-        // asks to select search criteria
-        System.out.println("Search Inventory by:");
-        System.out.println("1. Date");
-        System.out.println("2. Stock Label");
-        System.out.println("3. Brand");
-        System.out.println("4. Engine Number");
-        System.out.println("5. Status");
-        System.out.println("6. Key (engineNumber-based)");
-        System.out.print("Enter choice: ");
-        int choice = scanner.nextInt();
-        scanner.nextLine();  // Consume newline
+    // method to edit a batch of items with one write lock, one pass over the BST and one change log record
+    // updates of the same engine number are applied in the order they were given
+    public batchReport updateAll(List<itemUpdate> updates) {
+        long started = System.nanoTime();
+        inventoryEvents.batchEvent event = new inventoryEvents.batchEvent();
+        event.begin();
+        try {
+            String[] engineNumbers = new String[updates.size()];
+            for (int i = 0; i < engineNumbers.length; i++) {
+                engineNumbers[i] = updates.get(i).engineNumber;
+            }
+            sortedBatch batch = new sortedBatch(engineNumbers);
+            outcome[] outcomes = new outcome[batch.length()];
+
+            long stamp = lock.writeLock();
+            try {
+                // the outcomes are worked out first, so the edits can be logged before the BST changes
+                treeNode[] nodes = lookup(batch);
+                for (int i = 0; i < outcomes.length; i++) {
+                    outcomes[i] = nodes[i] == null ? outcome.NOT_FOUND : outcome.UPDATED;
+                }
+                // the edits are logged in the order they are made, so replaying them gives the same values
+                boolean logged = logBatch(outcomes, outcome.UPDATED, changes -> {
+                    for (int i : batch.order) {
+                        if (outcomes[i] == outcome.UPDATED) {
+                            itemUpdate update = updates.get(i);
+                            changes.logEdit(engineNumbers[i], update.date, update.stockLabel, update.brand, update.status);
+                        }
+                    }
+                });
+
+                if (!logged) {
+                    // nothing is edited
+                } else if ((long) batch.length() * AVL.height(root) < size) {
+                    // a small batch is edited one item at a time, which keeps the indexes up to date as it goes
+                    for (int i : batch.order) {
+                        if (nodes[i] != null) {
+                            itemUpdate update = updates.get(i);
+                            updateItem(nodes[i], update.date, update.stockLabel, update.brand, update.status);
+                        }
+                    }
+                    checkpointIfDue();
+                } else {
+                    updateMerged(batch, updates, nodes);
+                    checkpointIfDue();
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            batchReport report = new batchReport(engineNumbers, outcomes);
+            commitBatchEvent(event, "update", report, outcome.UPDATED);
+            return report;
+        } finally {
+            stats.record("batch.update", started);
+        }
+    }
 
-        // get any matching entries based on criteria selected
-        String searchValue = "";
-        switch (choice) {
-            case 1:
-                System.out.print("Enter Date to search (M/D/YYYY): ");
-                searchValue = scanner.nextLine();
-                break;
-            case 2:
-                System.out.print("Enter Stock Label to search: ");
-                searchValue = scanner.nextLine();
-                break;
-            case 3:
-                System.out.print("Enter Brand to search: ");
-                searchValue = scanner.nextLine();
-                break;
-            case 4:
-                System.out.print("Enter Engine Number to search: ");
-                searchValue = scanner.nextLine();
-                break;
-            case 5:
-                System.out.print("Enter Status to search: ");
-                searchValue = scanner.nextLine();
-                break;
-            case 6:
-                System.out.print("Enter Key to search (provided in displayed inventory): ");
-                searchValue = scanner.nextLine();
-                break;
-            default:
-                System.out.println("Invalid choice.");
-                return;
+    // emits the JFR event of a batch once it has been applied
+    private static void commitBatchEvent(inventoryEvents.batchEvent event, String operation, batchReport report, outcome changed) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.items = report.size();
+            event.rows = report.count(changed);
+            event.engineNumber = report.size() == 1 ? report.engineNumbers[0] : null;
+            event.commit();
         }
+    }
 
-        // calls the searchInOrder method to search the inventory
-        boolean found = searchInOrder(root, choice, searchValue);
+    // returns the node of every engine number in a batch, or null where it is not in the BST, by position in the batch
+    // a small batch is looked up one descent at a time, a large one by walking the BST in order alongside
+    // the sorted engine numbers, which costs O(n + k) instead of k descents
+    private treeNode[] lookup(sortedBatch batch) {
+        treeNode[] nodes = new treeNode[batch.length()];
+        if ((long) batch.length() * AVL.height(root) < size) {
+            for (int i : batch.order) {
+                nodes[i] = searchNode(root, batch.keys[i], batch.engineNumbers[i]);
+            }
+            return nodes;
+        }
 
-        // if no match was found
-        if (!found) {
-            System.out.println("No items found for the given search criteria.");
+        int next = 0;
+        for (treeNode node : inOrder()) {
+            while (next < batch.length() && batch.compare(next, node) < 0) {
+                next++;
+            }
+            while (next < batch.length() && batch.compare(next, node) == 0) {
+                nodes[batch.order[next++]] = node;
+            }
         }
+        return nodes;
     }
 
-    // helper method for traversal (in-order) to search inventory
-    private boolean searchInOrder(treeNode node, int choice, String searchValue) {
-        boolean found = false;
-        if (node != null) {
-            found = searchInOrder(node.left, choice, searchValue) || found;
-            boolean match = false;
+    // returns the nodes of a batch that insertAll would leave out, the same way insertAll picks them:
+    // engine numbers that are in the BST already, and later copies of an engine number within the batch
+    private Set<treeNode> findDuplicates(List<treeNode> nodes) {
+        Set<treeNode> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+        // the sort is stable, so the first copy of an engine number in the batch comes first
+        List<treeNode> sorted = new ArrayList<>(nodes);
+        sorted.sort(NODE_ORDER);
+
+        boolean small = (long) nodes.size() * AVL.height(root) < size;
+        Iterator<treeNode> existing = small ? Collections.emptyIterator() : inOrder().iterator();
+        treeNode current = existing.hasNext() ? existing.next() : null;
+        for (int i = 0; i < sorted.size(); i++) {
+            treeNode node = sorted.get(i);
+            boolean taken;
+            if (i > 0 && NODE_ORDER.compare(sorted.get(i - 1), node) == 0) {
+                taken = true;
+            } else if (small) {
+                taken = searchNode(root, node.key, node.engineNumber) != null;
+            } else {
+                while (current != null && NODE_ORDER.compare(current, node) < 0) {
+                    current = existing.hasNext() ? existing.next() : null;
+                }
+                taken = current != null && NODE_ORDER.compare(current, node) == 0;
+            }
+            if (taken) {
+                duplicates.add(node);
+            }
+        }
+        return duplicates;
+    }
 
-            switch (choice) {
-                case 1: match = node.date.equals(searchValue); break;
-                case 2: match = node.stockLabel.equals(searchValue); break;
-                case 3: match = node.brand.equals(searchValue); break;
-                case 4: match = node.engineNumber.equals(searchValue); break;
-                case 5: match = node.status.equals(searchValue); break;
-                case 6: match = String.valueOf(node.key).equals(searchValue); break;
+    // helper method that writes the changes of a batch to the change log before they are made
+    // returns false if they could not be written, and then every item that would have been changed
+    // is reported as NOT_LOGGED instead
+    private boolean logBatch(outcome[] outcomes, outcome changed, changeWriter changes) {
+        try {
+            logChanges(changes);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing to change log: " + e.getMessage() + ". Batch not applied.");
+            for (int i = 0; i < outcomes.length; i++) {
+                if (outcomes[i] == changed) {
+                    outcomes[i] = outcome.NOT_LOGGED;
+                }
             }
+            return false;
+        }
+    }
 
-            if (match) {
-                System.out.println("- " + node);
-                found = true;  // Track that at least one item was found
+    // removes a large batch by walking the BST in order alongside the sorted engine numbers
+    // the nodes that stay are rebuilt into a perfectly balanced BST and the indexes are rebuilt once,
+    // the BST is rebuilt in O(n + k) instead of k descents that each rebalance on the way up, the indexes in O(n log n)
+    private void deleteMerged(sortedBatch batch) {
+        treeNode[] kept = new treeNode[size];
+        int count = 0;
+        int next = 0;
+        for (treeNode node : inOrder()) {
+            while (next < batch.length() && batch.compare(next, node) < 0) {
+                next++;
             }
+            if (next < batch.length() && batch.compare(next, node) == 0) {
+                next++;
+            } else {
+                kept[count++] = node;
+            }
+        }
 
-            found = searchInOrder(node.right, choice, searchValue) || found;
+        size = count;
+        root = AVL.buildBalanced(Arrays.asList(kept), 0, count);
+        rebuildIndexes();
+    }
+
+    // edits a large batch, whose nodes were looked up by lookup
+    // the fields are changed in place, in engine number order, and the indexes are rebuilt once afterwards
+    private void updateMerged(sortedBatch batch, List<itemUpdate> updates, treeNode[] nodes) {
+        for (int i : batch.order) {
+            treeNode node = nodes[i];
+            if (node == null) {
+                continue;
+            }
+            itemUpdate update = updates.get(i);
+            if (update.date != stockDate.INVALID) node.date = update.date;
+            if (update.stockLabel != null) node.stockLabel = update.stockLabel;
+            if (update.brand != null) node.brand = update.brand;
+            if (update.status != null) node.status = update.status;
         }
-        return found;
+        rebuildIndexes();
     }
 
-    // method to sort the inventory by brand using Merge Sort
-    public void sortbyBrand() {
-        root = mergeSort(root);
-        System.out.println("Inventory sorted by brand.");
+    // names of the search choices, in menu order, used by the batch commands and the statistics
+    static final List<String> SEARCH_CRITERIA = List.of("date", "label", "brand", "engine", "status", "key", "dates", "prefix", "range");
+
+    // method to search the inventory without any prompts, with the same choices as stockInventory.searchInventory
+    // used by the menu, the batch commands and the server
+    // to is only used by the range searches (7 and 9), as the end of the range
+    // the matches are copies that are not linked to the BST, taken while the read was still valid
+    // prefix and engine number range searches (8 and 9) can match any share of the inventory, so their matches
+    // are streamed by engineSearch while the caller goes through them; the other searches run in one go
+    public Iterable<treeNode> matches(int choice, String searchValue, String to) {
+        if (choice == 8 || choice == 9) {
+            return () -> new engineSearch(choice, searchValue, to);
+        }
+        return search(choice, searchValue, to);
     }
 
-    // Merge Sort for BST (sorting by brand)
-    private treeNode mergeSort(treeNode root) {
-        // base case: if the tree is empty or has only one node
-        if (root == null || root.left == null && root.right == null) {
-            return root;
+    // helper method that runs a search that is not streamed, and answers a repeated one from the cache
+    // the list is read-only, as the same list is handed out again while the search is cached
+    private List<treeNode> search(int choice, String searchValue, String to) {
+        if (choice < 1 || choice > SEARCH_CRITERIA.size()) {
+            return Collections.emptyList();
         }
 
-        // converts BST to sorted linkedList
-        // this has to be done because the Merge Sort algorithm is designed for linkedLists and not BSTs
-        treeNode sortedList = treeToList(root);
+        long started = System.nanoTime();
+        inventoryEvents.searchEvent event = new inventoryEvents.searchEvent();
+        event.begin();
+        try {
+            // a repeated search is answered from the cache until a node it matches changes
+            searchCache.query query = new searchCache.query(choice, searchValue, to);
+            List<treeNode> matches = cache.get(query);
+            if (matches == null) {
+                long version = cache.version();
+                matches = cache.put(version, query, lookup(choice, searchValue, to));
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.criterion = SEARCH_CRITERIA.get(choice - 1);
+                event.value = choice == 7 ? searchValue + ".." + to : searchValue;
+                event.rows = matches.size();
+                event.commit();
+            }
+            return matches;
+        } finally {
+            stats.record("search." + SEARCH_CRITERIA.get(choice - 1), started);
+        }
+    }
 
-        // Merge Sort the linkedList
-        return mergeSortList(sortedList);
+    // helper method that runs a search with the lock it needs
+    // searches that only walk the BST run as optimistic reads, searches through the indexes take the read lock
+    private List<treeNode> lookup(int choice, String searchValue, String to) {
+        switch (choice) {
+            case 7: {
+                // calls findDateRange for a date range
+                int fromDay = stockDate.parse(searchValue);
+                int toDay = stockDate.parse(to);
+                if (fromDay == stockDate.INVALID || toDay == stockDate.INVALID) {
+                    return Collections.emptyList();
+                }
+                return lockedRead(stamp -> detach(findDateRange(fromDay, toDay), stamp));
+            }
+            case 4:
+            case 6:
+                // calls the findMatches method to search the inventory
+                return optimisticRead(stamp -> detach(findMatches(choice, searchValue, stamp), stamp));
+            default:
+                return lockedRead(stamp -> detach(findMatches(choice, searchValue, stamp), stamp));
+        }
     }
 
-    // converts BST to sorted linkedList
-    private treeNode treeToList(treeNode node) {
-        // base case: if the tree is empty
-        if (node == null) return null;
+    // streams the matches of a prefix or engine number range search (8 or 9), in engine number order
+    // the BST is ordered by engine number, so the matches are all next to each other: O(log n + matches)
+    // they are copied out in chunks, each by one optimistic read of at most VALIDATE_INTERVAL matches, and the
+    // next chunk starts right after the last engine number of the one before
+    // so a huge result is never held in memory, and no lock is held while the caller prints a chunk
+    // every chunk is consistent on its own: a unit that changes during the search is listed as it was when its
+    // chunk was read, and one that is added behind the chunks already read is not listed
+    // only results that fit in one chunk, which were read in one go, are kept in the cache
+    // the statistics and the JFR event cover the whole iteration, up to the last match
+    private class engineSearch implements Iterator<treeNode> {
+        private final int choice;
+        private final String from;
+        private final String value;
+        // the matches end at the first node this rejects
+        private final Predicate<treeNode> within;
+        private final long started = System.nanoTime();
+        private final inventoryEvents.searchEvent event = new inventoryEvents.searchEvent();
+        private List<treeNode> chunk;
+        private int next;
+        // true once chunk holds the last matches
+        private boolean last;
+        private long rows;
+        private boolean finished;
+
+        engineSearch(int choice, String searchValue, String to) {
+            event.begin();
+            this.choice = choice;
+            from = searchValue;
+            if (choice == 8) {
+                value = searchValue;
+                within = node -> node.engineNumber.startsWith(searchValue);
+            } else {
+                value = searchValue + ".." + to;
+                long toKey = engineKey.pack(to);
+                within = node -> engineKey.compare(node.key, node.engineNumber, toKey, to) <= 0;
+            }
 
-        // recursively convert the left and right subtrees to linkedLists
-        treeNode leftList = treeToList(node.left);
-        treeNode rightList = treeToList(node.right);
+            // a repeated search is answered from the cache until a node it matches changes
+            searchCache.query query = new searchCache.query(choice, searchValue, to);
+            chunk = cache.get(query);
+            if (chunk != null) {
+                last = true;
+            } else {
+                long version = cache.version();
+                read(null);
+                if (last) {
+                    chunk = cache.put(version, query, chunk);
+                }
+            }
+        }
 
-        // convert the node to a linkedList
-        node.left = null;
-        node.right = rightList;
+        // copies the next chunk out of the BST, starting right after a match that was already returned, or at from
+        // one match more than a chunk is looked at, which tells whether another chunk follows
+        private void read(treeNode after) {
+            List<treeNode> copies = optimisticRead(stamp -> {
+                List<treeNode> found = new ArrayList<>();
+                Iterator<treeNode> nodes = new inOrderIterator(root, after == null ? from : after.engineNumber, within);
+                while (nodes.hasNext() && found.size() <= VALIDATE_INTERVAL) {
+                    treeNode node = nodes.next();
+                    if (after == null || NODE_ORDER.compare(node, after) > 0) {
+                        found.add(copyOf(node));
+                        validate(stamp, found.size());
+                    }
+                }
+                return found;
+            });
+            last = copies.size() <= VALIDATE_INTERVAL;
+            chunk = last ? copies : copies.subList(0, VALIDATE_INTERVAL);
+            next = 0;
+        }
 
-        // if leftList is null, the node is the head of the linkedList
-        if (leftList == null) return node;
+        @Override
+        public boolean hasNext() {
+            if (next == chunk.size() && !last) {
+                read(chunk.get(chunk.size() - 1));
+            }
+            if (next < chunk.size()) {
+                return true;
+            }
+            finish();
+            return false;
+        }
 
-        // otherwise, find the last node of the leftList and add the node to it
-        treeNode temp = leftList;
-        while (temp.right != null) {
-            temp = temp.right;
+        @Override
+        public treeNode next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            rows++;
+            return chunk.get(next++);
+        }
+
+        // records the search once the last match has been handed out
+        private void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            stats.record("search." + SEARCH_CRITERIA.get(choice - 1), started);
+            event.end();
+            if (event.shouldCommit()) {
+                event.criterion = SEARCH_CRITERIA.get(choice - 1);
+                event.value = value;
+                event.rows = rows;
+                event.commit();
+            }
         }
-        temp.right = node;
-        return leftList;
     }
 
-    // Merge Sort for linkedList
-    private treeNode mergeSortList(treeNode head) {
-        // base case: if the linkedList is empty or has only one node
-        if (head == null || head.right == null) {
-            return head;
+    // helper method that copies a list of matches out of the BST
+    private List<treeNode> detach(Iterable<treeNode> matches, long stamp) {
+        List<treeNode> copies = new ArrayList<>();
+        for (treeNode node : matches) {
+            copies.add(copyOf(node));
+            validate(stamp, copies.size());
         }
+        return copies;
+    }
 
-        // calls the getMiddle method to find the middle of the linkedList
-        treeNode middle = getMiddle(head);
-        treeNode nextOfMiddle = middle.right;
-        middle.right = null;
+    // helper method that finds the matching entries for a search criteria
+    // uses the secondary indexes and the BST itself so only the matches are visited
+    private Iterable<treeNode> findMatches(int choice, String searchValue, long stamp) {
+        switch (choice) {
+            case 1: return dateIndex.get(stockDate.parse(searchValue));
+            case 2: return stockLabelIndex.get(searchValue);
+            case 3: return brandIndex.get(searchValue);
+            case 4: return findByEngineNumber(searchValue);
+            case 5: return statusIndex.get(searchValue);
+            case 6:
+                long key;
+                try {
+                    key = Long.parseLong(searchValue.trim());
+                } catch (NumberFormatException e) {
+                    return Collections.emptyList();
+                }
+                // packed keys lead straight back to their engine number, and any other number matches nothing
+                if (key >= 0) {
+                    String engineNumber = engineKey.unpack(key);
+                    return engineNumber == null ? Collections.emptyList() : findByEngineNumber(engineNumber);
+                }
+                // engine numbers without a packed key all share NO_KEY, so those are still found by traversal
+                return searchInOrder(key, stamp);
+            default: return Collections.emptyList();
+        }
+    }
 
-        // recursively sort the left and right halves of the linkedList
-        treeNode left = mergeSortList(head);
-        treeNode right = mergeSortList(nextOfMiddle);
+    // helper method that finds the entries dated between from and to (both inclusive, as epoch days)
+    // the matches are in date order, and entries with the same date are in engine number order
+    private Iterable<treeNode> findDateRange(int from, int to) {
+        return dateIndex.range(from, to);
+    }
 
-        // merge the sorted left and right halves
-        return merge(left, right);
+    // helper method that looks up a single engine number in the BST
+    private Collection<treeNode> findByEngineNumber(String engineNumber) {
+        treeNode node = searchNode(root, convertKey(engineNumber), engineNumber);
+        return node == null ? Collections.emptyList() : Collections.singletonList(node);
     }
 
-    // method to find the middle of the linkedList
-    private treeNode getMiddle(treeNode head) {
-        if (head == null) return null;
+    // helper method for traversal (in-order) to find the entries with a key that does not lead to one engine number
+    private List<treeNode> searchInOrder(long key, long stamp) {
+        List<treeNode> matches = new ArrayList<>();
+        int visited = 0;
+        for (treeNode node : inOrder()) {
+            validate(stamp, ++visited);
+            if (node.key == key) {
+                matches.add(node);
+            }
+        }
+        return matches;
+    }
 
-        // uses the slow and fast pointer technique to find the middle
-        treeNode slow = head, fast = head;
-        while (fast.right != null && fast.right.right != null) {
-            slow = slow.right;
-            fast = fast.right.right;
+    // in-order traversal of the whole BST, in engine number order
+    private Iterable<treeNode> inOrder() {
+        treeNode start = root;
+        return () -> new inOrderIterator(start);
+    }
+
+    // order in which the inventory is displayed and written
+    // brand order once the inventory has been sorted by brand, engine number order otherwise
+    private Iterable<treeNode> inventoryOrder() {
+        return sortedByBrand ? brandIndex.values() : inOrder();
+    }
+
+    // method to sort the inventory by brand
+    // the brand index already keeps every node in brand order, so the BST itself is never rearranged
+    // this switches displaying and writing the inventory over to the brand order
+    public void sortbyBrand() {
+        useBrandOrder();
+        System.out.println("Inventory sorted by brand.");
+    }
+
+    // switches to brand order without printing anything
+    void useBrandOrder() {
+        long started = System.nanoTime();
+        inventoryEvents.sortEvent event = new inventoryEvents.sortEvent();
+        event.begin();
+        try {
+            long stamp = lock.writeLock();
+            sortedByBrand = true;
+            int rows = size;
+            lock.unlockWrite(stamp);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.rows = rows;
+                event.commit();
+            }
+        } finally {
+            stats.record("sort", started);
         }
+    }
 
-        // slow is the middle of the linkedList
-        return slow;
+    // true once the inventory has been sorted by brand
+    boolean isSortedByBrand() {
+        return optimisticRead(stamp -> sortedByBrand);
     }
 
-    // merge method to combine two sorted linked lists
-    private treeNode merge(treeNode left, treeNode right) {
-        // base cases: if either linkedList is empty
-        if (left == null) return right;
-        if (right == null) return left;
+    // number of units in the inventory
+    int size() {
+        return optimisticRead(stamp -> size);
+    }
+
+    // latency histograms of the operations above, see inventoryStats
+    inventoryStats stats() {
+        return stats;
+    }
+
+    // prints the latency histograms, for Show Statistics
+    public void printStatistics() {
+        stats.print();
+    }
+
+    // current shape of the BST, its indexes and the change log, taken under one read lock so they agree
+    Map<String, Long> gauges() {
+        return lockedRead(stamp -> {
+            Map<String, Long> gauges = new LinkedHashMap<>();
+            gauges.put("NodeCount", (long) size);
+            gauges.put("TreeHeight", (long) AVL.height(root));
+            gauges.put("DateIndexSize", (long) dateIndex.size());
+            gauges.put("StockLabelIndexSize", (long) stockLabelIndex.size());
+            gauges.put("BrandIndexSize", (long) brandIndex.size());
+            gauges.put("StatusIndexSize", (long) statusIndex.size());
+            gauges.put("PendingLogRecords", log == null ? 0L : (long) log.size());
+            gauges.put("SearchCacheEntries", (long) cache.size());
+            gauges.put("SearchCacheHits", cache.hits());
+            gauges.put("SearchCacheMisses", cache.misses());
+            return gauges;
+        });
+    }
 
-        // compares the brand of the left and right nodes
-        if (left.brand.compareTo(right.brand) <= 0) {
-            left.right = merge(left.right, right);
-            return left;
-        } else {
-            // if the right node's brand is smaller, it becomes the new head
-            right.right = merge(left, right.right);
-            return right;
+    // copies of every unit, in the order they are displayed and written
+    List<treeNode> listInventory() {
+        long started = System.nanoTime();
+        try {
+            return lockedRead(stamp -> detach(inventoryOrder(), stamp));
+        } finally {
+            stats.record("list", started);
         }
     }
 
     // method to display the inventory along with the key for each item
     // key is not written to the CSV file, but it is used for searching
+    // the rows are printed while the read lock is held, so other readers carry on but writers wait
     public void displayInventory() {
-        if (root == null) {
-            System.out.println("Inventory is empty.");
-            return;
+        long started = System.nanoTime();
+        try {
+            long stamp = lock.readLock();
+            try {
+                if (root == null) {
+                    System.out.println("Inventory is empty.");
+                    return;
+                }
+
+                System.out.println("Current Inventory:");
+                for (treeNode node : inventoryOrder()) {
+                    displayNode(node);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        } finally {
+            stats.record("display", started);
         }
+    }
 
-        System.out.println("Current Inventory:");
-        displayOrdered(root);
+    // helper method to display a single item, also used by the other storage modes
+    static void displayNode(treeNode node) {
+        String key = String.valueOf(node.key);  // Convert the engine number to the key
+        System.out.println("- Date: " + stockDate.format(node.date) + " | Stock: " + node.stockLabel +
+                " | Brand: " + node.brand + " | Engine No.: " + node.engineNumber +
+                " | Status: " + node.status + " | Key: " + key);
     }
 
-    // helper method for traversal (in-order) to display the inventory
-    private void displayOrdered(treeNode node) {
-        if (node != null) {
-            displayOrdered(node.left);
-            String key = String.valueOf(node.key);  // Convert the engine number to the key
-            System.out.println("- Date: " + node.date + " | Stock: " + node.stockLabel +
-                    " | Brand: " + node.brand + " | Engine No.: " + node.engineNumber +
-                    " | Status: " + node.status + " | Key: " + key);
-            displayOrdered(node.right);
+    // writes the inventory to a CSV file without asking for confirmation
+    // saving over the loaded file is a checkpoint, so it takes the write lock and its change log starts over
+    // any other file is written under the read lock
+    public void saveCSV(String filename) throws IOException {
+        long started = System.nanoTime();
+        try {
+            long stamp = lock.readLock();
+            try {
+                if (log == null || !logTarget.equals(Paths.get(filename).toAbsolutePath())) {
+                    writeCSV(filename);
+                    return;
+                }
+                // the read lock is traded for the write lock, which has to wait for the other readers first
+                long writeStamp = lock.tryConvertToWriteLock(stamp);
+                if (writeStamp == 0) {
+                    lock.unlockRead(stamp);
+                    writeStamp = lock.writeLock();
+                }
+                stamp = writeStamp;
+                // the change log may have been closed while no lock was held
+                if (log != null && logTarget.equals(Paths.get(filename).toAbsolutePath())) {
+                    checkpoint();
+                } else {
+                    writeCSV(filename);
+                }
+            } finally {
+                lock.unlock(stamp);
+            }
+        } finally {
+            stats.record("write", started);
         }
     }
 
-    // method to write the inventory to a CSV file
-    public void writeToCSV(String filename) {
-    try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-        List<String> headers = new ArrayList<>();
-        List<String> dataLines = new ArrayList<>();
+    // writes every node in the same order they are displayed
+    private void writeCSV(String filename) throws IOException {
+        writeCSVFile(filename, out -> {
+            for (treeNode node : inventoryOrder()) {
+                out.row(node.date, node.stockLabel, node.brand, node.engineNumber, node.status);
+            }
+        });
+    }
 
-        String line;
-        int lineCount = 0;
+    // rows of a CSV file, handed to the writer one at a time in the order they are written
+    interface csvRows {
+        void writeTo(csvWriter out) throws IOException;
+    }
 
-        // reads the existing file while keeping the headers
-        while ((line = br.readLine()) != null) {
-            lineCount++;
-            if (lineCount <= 2) {
-                headers.add(line); // Store header lines
-            } else {
-                dataLines.add(line); // Store data lines
-            }
+    // writes the rows of a CSV file, see writeCSVFile
+    // each row is built in a reused StringBuilder, so no format string is parsed and no Strings are created
+    // a field with a comma or a quote is written in quotes, with its quotes doubled, so csvRowParser reads back
+    // exactly the same value; so is an empty field, or one with a line break or spaces at either end, which the parser
+    // would otherwise cut or trim
+    static final class csvWriter {
+        private final Writer out;
+        private final StringBuilder row = new StringBuilder(64);
+        private int rows;
+
+        private csvWriter(Writer out) {
+            this.out = out;
         }
 
-        // displays warning before overwriting
-        // useful because people may forget to load the CSV file first
-        System.out.println("Warning: The CSV file will be overwritten with current inventory data.");
-        System.out.print("Do you want to proceed? (yes/no): ");
-        Scanner scanner = new Scanner(System.in);
-        String confirmation = scanner.nextLine().trim().toLowerCase();
-
-        if (!confirmation.equals("yes")) {
-            System.out.println("Operation canceled. CSV file was not modified.");
-            return;
+        void row(int date, String stockLabel, String brand, String engineNumber, String status) throws IOException {
+            row.setLength(0);
+            stockDate.appendTo(row, date);
+            appendField(row.append(','), stockLabel);
+            appendField(row.append(','), brand);
+            appendField(row.append(','), engineNumber);
+            appendField(row.append(','), status);
+            row.append(System.lineSeparator());
+            out.append(row);
+            rows++;
         }
 
-        // opens file for writing
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(filename))) {
-            // Write headers back
-            for (String header : headers) {
-                bw.write(header);
-                bw.newLine();
+        private static void appendField(StringBuilder row, String value) {
+            if (!needsQuotes(value)) {
+                row.append(value);
+                return;
+            }
+            row.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    row.append('"');
+                }
+                row.append(c);
             }
+            row.append('"');
+        }
 
-            // calls writeInventoryToCSV method 
-            writeInventoryToCSV(bw, root);
+        private static boolean needsQuotes(String value) {
+            int length = value.length();
+            // an empty last field would not be counted as a column at all
+            if (length == 0 || value.charAt(0) <= ' ' || value.charAt(length - 1) <= ' ') {
+                return true;
+            }
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                    return true;
+                }
+            }
+            return false;
         }
+    }
 
-        System.out.println("CSV file updated successfully.");
+    // writes a CSV file for every storage mode
+    // only the two header lines of the existing file are read, then every row is streamed to a temporary file
+    // in the same folder, which is flushed to disk and renamed over the original in one step
+    // a crash at any point leaves either the old file or the new one, never a half-written file
+    static void writeCSVFile(String filename, csvRows rows) throws IOException {
+        inventoryEvents.writeEvent event = new inventoryEvents.writeEvent();
+        event.begin();
+        Path target = Paths.get(filename).toAbsolutePath();
+        List<String> headers = readHeaders(target);
+
+        csvWriter writer;
+        long bytes;
+        Path temp = createTempFile(target);
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp.toFile());
+                 Writer bw = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16)) {
+                // Write headers back
+                for (String header : headers) {
+                    bw.write(header);
+                    bw.write(System.lineSeparator());
+                }
 
-        } catch (IOException e) {
-            System.err.println("Error updating CSV file: " + e.getMessage());
+                writer = new csvWriter(bw);
+                rows.writeTo(writer);
+
+                // makes sure every row is on the disk before the file replaces the original
+                bw.flush();
+                out.getFD().sync();
+                bytes = out.getChannel().position();
+            }
+
+            replaceFile(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = filename;
+            event.rows = writer.rows;
+            event.bytes = bytes;
+            event.commit();
         }
     }
 
-    // helper method to perform in-order traversal and write nodes to CSV
-    private void writeInventoryToCSV(BufferedWriter bw, treeNode node) throws IOException {
-        if (node != null) {
-            writeInventoryToCSV(bw, node.left);
-            bw.write(String.format("%s,%s,%s,%s,%s", node.date, node.stockLabel, node.brand, node.engineNumber, node.status));
-            bw.newLine();
-            writeInventoryToCSV(bw, node.right);
+    // creates an empty temporary file in the same folder as the target, to be renamed over it by replaceFile
+    // it is created like any other new file, so a target that does not exist yet ends up with the usual permissions
+    // (Files.createTempFile would make it readable by its owner only)
+    static Path createTempFile(Path target) throws IOException {
+        while (true) {
+            Path temp = target.resolveSibling(target.getFileName() + "."
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // another temporary file has that name, so another one is picked
+            }
         }
     }
 
-// Method to edit an item in the inventory
-public void editItem(String engineNumber) {
-    int key = convertKey(engineNumber);
-    treeNode node = searchNode(root, key);
+    // helper method that renames a fully written temporary file over the target file in one step
+    // a file that is replaced keeps its permissions, the temporary file gets them before the rename
+    static void replaceFile(Path temp, Path target) throws IOException {
+        if (Files.exists(target)) {
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+            } catch (UnsupportedOperationException e) {
+                // not a POSIX file system, the permissions stay as they are
+            }
+        }
 
-    if (node == null) {
-        System.out.println("Stock entry not found.");
-        return;
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
-    Scanner scanner = new Scanner(System.in);
-    System.out.println("Editing stock entry: " + node);
+    // method to save the whole inventory to a binary snapshot file
+    // the snapshot keeps the shape of the BST, so loading it back needs no parsing and no rebalancing
+    public void saveSnapshot(String filename) {
+        long started = System.nanoTime();
+        try {
+            long stamp = lock.readLock();
+            try {
+                inventorySnapshot.write(Paths.get(filename), root, size, sortedByBrand);
+                System.out.println("Snapshot saved successfully.");
+            } catch (IOException e) {
+                System.err.println("Error writing snapshot file: " + e.getMessage());
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        } finally {
+            stats.record("snapshot.save", started);
+        }
+    }
+
+    // method to replace the inventory with the contents of a binary snapshot file
+    public void loadSnapshot(String filename) {
+        long started = System.nanoTime();
+        try {
+            inventorySnapshot.contents snapshot;
+            try {
+                snapshot = inventorySnapshot.read(Paths.get(filename));
+            } catch (IOException e) {
+                System.err.println("Error reading snapshot file: " + e.getMessage());
+                return;
+            }
+
+            long stamp = lock.writeLock();
+            try {
+                root = snapshot.root;
+                size = snapshot.size;
+                sortedByBrand = snapshot.sortedByBrand;
+
+                // the secondary indexes are not part of the snapshot, they are rebuilt from the BST
+                rebuildIndexes();
+
+                // the inventory no longer matches the CSV file of the change log, so changes stop being logged
+                closeLog();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            System.out.println("Snapshot loaded successfully.");
+        } finally {
+            stats.record("snapshot.load", started);
+        }
+    }
 
-    System.out.print("Enter new Date (current: " + node.date + ") or press Enter to keep: ");
-    String newDate = scanner.nextLine().trim();
-    if (!newDate.isEmpty()) node.date = newDate;
+    // helper method that reads the two header lines of the existing CSV file
+    // a new file gets the headers of the MotorPH inventory file
+    static List<String> readHeaders(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return DEFAULT_HEADERS;
+        }
+        List<String> headers = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while (headers.size() < 2 && (line = br.readLine()) != null) {
+                headers.add(line);
+            }
+        }
+        return headers;
+    }
 
-    System.out.print("Enter new Stock Label (current: " + node.stockLabel + ") or press Enter to keep: ");
-    String newStockLabel = scanner.nextLine().trim();
-    if (!newStockLabel.isEmpty()) node.stockLabel = newStockLabel;
+// returns a copy of the unit with an engine number, or null
+// the prompts of stockInventory.editItem show the current values from this copy
+public treeNode find(String engineNumber) {
+    long key = convertKey(engineNumber);
+    return optimisticRead(stamp -> copyOf(searchNode(root, key, engineNumber)));
+}
 
-    System.out.print("Enter new Brand (current: " + node.brand + ") or press Enter to keep: ");
-    String newBrand = scanner.nextLine().trim();
-    if (!newBrand.isEmpty()) node.brand = newBrand;
+// Method to edit an item in the inventory once the new values have been entered
+// the node is looked up again under the write lock, in case it was deleted since find
+// returns false if the engine number is not in the inventory, or if the edit could not be written to the change log
+public boolean update(itemUpdate update) {
+    long key = convertKey(update.engineNumber);
+    long started = System.nanoTime();
+    inventoryEvents.editEvent event = new inventoryEvents.editEvent();
+    event.begin();
+    long stamp = lock.writeLock();
+    try {
+        treeNode node = searchNode(root, key, update.engineNumber);
+        if (node == null) {
+            return false;
+        }
+        // the edit is recorded in the change log before the node changes
+        try {
+            logChanges(changes -> changes.logEdit(update.engineNumber, update.date, update.stockLabel,
+                    update.brand, update.status));
+        } catch (IOException e) {
+            System.err.println("Error writing to change log: " + e.getMessage());
+            return false;
+        }
+        updateItem(node, update.date, update.stockLabel, update.brand, update.status);
+        checkpointIfDue();
+        event.rows = 1;
+        return true;
+    } finally {
+        lock.unlockWrite(stamp);
+        stats.record("edit", started);
+        event.end();
+        if (event.shouldCommit()) {
+            event.engineNumber = update.engineNumber;
+            event.commit();
+        }
+    }
+}
 
-    System.out.print("Enter new Status (current: " + node.status + ") or press Enter to keep: ");
-    String newStatus = scanner.nextLine().trim();
-    if (!newStatus.isEmpty()) node.status = newStatus;
+// helper method that copies the fields of a node into a new node that is not linked to the BST
+private static treeNode copyOf(treeNode node) {
+    return node == null ? null : new treeNode(node.date, node.stockLabel, node.brand, node.engineNumber, node.status, node.key);
+}
 
-    System.out.println("Stock entry updated successfully.");
+// helper method that changes the fields of a node, the edit is already in the change log (or being replayed from it)
+// a date of stockDate.INVALID or a null value keeps the current value
+// each changed field is moved to its new value in the matching secondary index
+private void updateItem(treeNode node, int date, String stockLabel, String brand, String status) {
+    // searches that matched the old values, then the ones that match the new values
+    cache.invalidate(node);
+    if (date != stockDate.INVALID) {
+        dateIndex.remove(node.date, node);
+        node.date = date;
+        dateIndex.add(node.date, node);
+    }
+    if (stockLabel != null) {
+        stockLabelIndex.remove(node.stockLabel, node);
+        node.stockLabel = stockLabel;
+        stockLabelIndex.add(node.stockLabel, node);
+    }
+    if (brand != null) {
+        brandIndex.remove(node.brand, node);
+        node.brand = brand;
+        brandIndex.add(node.brand, node);
+    }
+    if (status != null) {
+        statusIndex.remove(node.status, node);
+        node.status = status;
+        statusIndex.add(node.status, node);
+    }
+    cache.invalidate(node);
 }
 
 // helper method to find a node by key
-private treeNode searchNode(treeNode node, int key) {
-    if (node == null || node.key == key) {
-        return node;
+private treeNode searchNode(treeNode node, long key, String engineNumber) {
+    for (int depth = 0; node != null; depth++) {
+        checkDepth(depth);
+        int cmp = engineKey.compare(key, engineNumber, node.key, node.engineNumber);
+        if (cmp == 0) {
+            return node;
+        }
+        node = cmp < 0 ? node.left : node.right;
     }
-    return key < node.key ? searchNode(node.left, key) : searchNode(node.right, key);
+    return null;
 }
 
 
     //main method to run the program
     public static void main(String[] args) {
     invStockBST3 inventory = new invStockBST3();
+    // the statistics can be read with JConsole in every mode
+    inventory.stats().register();
+
+    // --batch <command file> runs the commands in the file without the menu, see batchRunner
+    if (args.length == 2 && args[0].equals("--batch")) {
+        int errors = batchRunner.run(inventory, args[1]);
+        System.exit(errors == 0 ? 0 : 1);
+    }
+
+    // --serve <port> <csv file> [--bind <address>] loads the CSV file and answers JSON requests, see inventoryServer
+    if ((args.length == 3 || args.length == 5 && args[3].equals("--bind")) && args[0].equals("--serve")) {
+        inventory.loadFromCSV(args[2]);
+        try {
+            inventoryServer server = new inventoryServer(inventory, args[2], args.length == 5 ? args[4] : null,
+                    Integer.parseInt(args[1]), System.getenv(inventoryServer.TOKEN_VARIABLE));
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.start();
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error starting the server: " + e.getMessage());
+            System.exit(1);
+        }
+        return;
+    }
+
+    // the other storage modes run the same menu, see stockInventory
+    // --shards <n> splits the inventory over n trees, see shardedInventory
+    // --columnar keeps the units in off-heap columns, see columnarInventory
+    // --mapped <snapshot file> maps a snapshot file and only reads it, see mappedSnapshot
+    // --persistent keeps the units in an immutable tree that is displayed and written from snapshots, see persistentInventory
+    stockInventory menu = inventory;
+    if (args.length == 2 && args[0].equals("--shards")) {
+        try {
+            menu = new shardedInventory(Integer.parseInt(args[1]));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid number of shards: " + args[1]);
+            System.exit(1);
+        }
+    } else if (args.length == 1 && args[0].equals("--columnar")) {
+        menu = new columnarInventory();
+    } else if (args.length == 1 && args[0].equals("--persistent")) {
+        menu = new persistentInventory();
+    } else if (args.length == 2 && args[0].equals("--mapped")) {
+        mappedSnapshot snapshot = new mappedSnapshot();
+        snapshot.open(args[1]);
+        menu = snapshot;
+    }
+
     Scanner scanner = new Scanner(System.in);
 
     while (true) {
@@ -510,7 +2102,10 @@ private treeNode searchNode(treeNode node, int key) {
         System.out.println("6. Display Inventory");
         System.out.println("7. Edit Item Manually");
         System.out.println("8. Write Inventory to CSV File");
-        System.out.println("9. Exit");
+        System.out.println("9. Save Inventory Snapshot");
+        System.out.println("10. Load Inventory Snapshot");
+        System.out.println("11. Show Statistics");
+        System.out.println("12. Exit");
         System.out.print("Enter choice: ");
 
         int choice = scanner.nextInt();
@@ -520,40 +2115,53 @@ private treeNode searchNode(treeNode node, int key) {
             case 1:
                 System.out.print("Enter CSV file path: ");
                 String csvFilePath = scanner.nextLine();
-                inventory.loadFromCSV(csvFilePath);
+                menu.loadFromCSV(csvFilePath);
                 break;
             case 2:
                 System.out.print("Enter Brand: ");
                 String brand = scanner.nextLine();
                 System.out.print("Enter Engine Number: ");
                 String engineNumber = scanner.nextLine();
-                inventory.addItem(brand, engineNumber);
+                menu.addItem(brand, engineNumber);
                 break;
             case 3:
                 System.out.print("Enter Engine Number to delete: ");
                 String engineNumberToDelete = scanner.nextLine();
-                inventory.deleteItem(engineNumberToDelete);
+                menu.deleteItem(engineNumberToDelete);
                 break;
             case 4:
-                inventory.sortbyBrand();
+                menu.sortbyBrand();
                 break;
             case 5:
-                inventory.searchInventory();
+                menu.searchInventory();
                 break;
             case 6:
-                inventory.displayInventory();
+                menu.displayInventory();
                 break;
             case 7:
                 System.out.print("Enter Engine Number to edit: ");
                 String engineNumberToEdit = scanner.nextLine();
-                inventory.editItem(engineNumberToEdit);
+                menu.editItem(engineNumberToEdit);
                 break;
             case 8:
                 System.out.print("Enter CSV file path to write: ");
                 String writeCsvFilePath = scanner.nextLine();
-                inventory.writeToCSV(writeCsvFilePath);
+                menu.writeToCSV(writeCsvFilePath);
                 break;
             case 9:
+                System.out.print("Enter snapshot file path to write: ");
+                String writeSnapshotPath = scanner.nextLine();
+                menu.saveSnapshot(writeSnapshotPath);
+                break;
+            case 10:
+                System.out.print("Enter snapshot file path: ");
+                String snapshotPath = scanner.nextLine();
+                menu.loadSnapshot(snapshotPath);
+                break;
+            case 11:
+                menu.printStatistics();
+                break;
+            case 12:
                 System.out.println("Exiting program.");
                 scanner.close();
                 return;
@@ -0,0 +1,96 @@
+// packages for Java Flight Recorder events
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Java Flight Recorder events for the inventory operations, so a slow load, sort, search, write, delete, edit
+// or batch of changes (the batch mode and the HTTP server make their changes in batches) shows up in the same
+// recording as the garbage collections and safepoints around it
+// start a recording with: java -XX:StartFlightRecording=filename=inventory.jfr invStockBST3
+// and look for the MotorPH/Inventory category in JDK Mission Control, or run: jfr print --categories MotorPH inventory.jfr
+//
+// while no recording is running, begin, end and commit do nothing, and the fields are only filled in
+// once shouldCommit says the event is wanted, so the operations cost the same as without the events
+class inventoryEvents {
+    private inventoryEvents() {
+    }
+
+    // fields every inventory event has, the duration comes from begin and end
+    @Category({"MotorPH", "Inventory"})
+    @StackTrace(false)
+    abstract static class operationEvent extends Event {
+        @Label("Rows Touched")
+        @Description("Units read, matched or changed by the operation")
+        long rows;
+
+        @Label("Bytes")
+        @Description("Bytes read from or written to disk, zero for operations that stay in memory")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("motorph.inventory.Load")
+    @Label("Inventory Load")
+    static class loadEvent extends operationEvent {
+        @Label("File")
+        String file;
+    }
+
+    @Name("motorph.inventory.Sort")
+    @Label("Inventory Sort by Brand")
+    static class sortEvent extends operationEvent {
+    }
+
+    @Name("motorph.inventory.Search")
+    @Label("Inventory Search")
+    static class searchEvent extends operationEvent {
+        @Label("Criterion")
+        String criterion;
+
+        @Label("Value")
+        String value;
+    }
+
+    // also covers saving without confirmation and the checkpoints of the change log
+    @Name("motorph.inventory.Write")
+    @Label("Inventory Write")
+    static class writeEvent extends operationEvent {
+        @Label("File")
+        String file;
+    }
+
+    @Name("motorph.inventory.Delete")
+    @Label("Inventory Delete")
+    static class deleteEvent extends operationEvent {
+        @Label("Engine Number")
+        String engineNumber;
+    }
+
+    @Name("motorph.inventory.Edit")
+    @Label("Inventory Edit")
+    static class editEvent extends operationEvent {
+        @Label("Engine Number")
+        String engineNumber;
+    }
+
+    // one event per call of addAll, deleteAll or updateAll, rows is the number of items that were changed
+    @Name("motorph.inventory.Batch")
+    @Label("Inventory Batch")
+    static class batchEvent extends operationEvent {
+        @Label("Operation")
+        @Description("add, delete or update")
+        String operation;
+
+        @Label("Items")
+        @Description("Items in the batch, including the ones that were not found, duplicates and invalid dates")
+        long items;
+
+        @Label("Engine Number")
+        @Description("Engine number of a batch with a single item, such as a change made through the HTTP server")
+        String engineNumber;
+    }
+}
@@ -0,0 +1,256 @@
+// packages for the append-only log file
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+//more specific packages
+import java.util.zip.CRC32;
+
+// write-ahead log of inventory changes, kept next to the CSV file it belongs to (inventory.csv.wal)
+// every add, delete and edit is appended as one small record and forced to disk before the inventory
+// changes, so saving a change costs O(1) instead of rewriting the CSV; a checkpoint writes the CSV and empties the log
+// a record that could not be written is cut off again, and the inventory leaves that change out
+//
+// each record is: payload length (int), payload, CRC32 of the payload (int)
+// a record that was only partly written when the program stopped fails its checksum, and recovery
+// stops there and cuts it off
+// the changes of a batch are framed together as one BATCH record, so a batch is recovered completely or not at all
+class inventoryLog implements Closeable {
+    static final String SUFFIX = ".wal";
+
+    // record types
+    static final byte ADD = 1;
+    static final byte DELETE = 2;
+    static final byte EDIT = 3;
+    static final byte BATCH = 4;
+
+    // one change read back from the log
+    static class change {
+        byte type;
+        String engineNumber;
+        // date as an epoch day, stockDate.INVALID if an edit keeps the date
+        int date;
+        // null if an edit keeps the value
+        String stockLabel;
+        String brand;
+        String status;
+    }
+
+    // receives the changes found in the log during recovery
+    interface replayer {
+        void apply(change entry);
+    }
+
+    private final FileChannel channel;
+    // reused for building each record
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final CRC32 crc = new CRC32();
+    // records written since the last checkpoint
+    private int records;
+    // payloads collected since startBatch, each one length-prefixed, null when no batch is open
+    private ByteArrayOutputStream batch;
+    private int batchRecords;
+
+    inventoryLog(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // returns the log file that belongs to a CSV file
+    static Path forCSV(String filename) {
+        return Path.of(filename + SUFFIX);
+    }
+
+    // method to append an added item
+    void logAdd(int date, String stockLabel, String brand, String engineNumber, String status) throws IOException {
+        bytes.reset();
+        out.writeByte(ADD);
+        out.writeUTF(engineNumber);
+        out.writeInt(date);
+        out.writeUTF(stockLabel);
+        out.writeUTF(brand);
+        out.writeUTF(status);
+        append();
+    }
+
+    // method to append a deleted item
+    void logDelete(String engineNumber) throws IOException {
+        bytes.reset();
+        out.writeByte(DELETE);
+        out.writeUTF(engineNumber);
+        append();
+    }
+
+    // method to append an edited item, only the changed fields are stored
+    void logEdit(String engineNumber, int date, String stockLabel, String brand, String status) throws IOException {
+        bytes.reset();
+        out.writeByte(EDIT);
+        out.writeUTF(engineNumber);
+        out.writeInt(date);
+        writeOptional(stockLabel);
+        writeOptional(brand);
+        writeOptional(status);
+        append();
+    }
+
+    // method to collect the following changes into one record, which is written by finishBatch
+    void startBatch() {
+        batch = new ByteArrayOutputStream();
+        batchRecords = 0;
+    }
+
+    // method to drop the changes collected since startBatch without writing them
+    void cancelBatch() {
+        batch = null;
+    }
+
+    // method to write the changes collected since startBatch as one record, forced to disk once
+    void finishBatch() throws IOException {
+        ByteArrayOutputStream collected = batch;
+        int count = batchRecords;
+        batch = null;
+        if (count == 0) {
+            return;
+        }
+
+        bytes.reset();
+        out.writeByte(BATCH);
+        out.writeInt(count);
+        collected.writeTo(out);
+        append();
+        // every change in the batch counts towards the next checkpoint
+        records += count - 1;
+    }
+
+    // method to replay every intact record in the log, in the order they were written
+    // a damaged tail is cut off, so new records are appended right after the last good one
+    int replay(replayer target) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(4);
+        long position = 0;
+        int applied = 0;
+
+        while (position + 4 <= size) {
+            header.clear();
+            channel.read(header, position);
+            int length = header.getInt(0);
+            if (length <= 0 || position + 4 + length + 4 > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length + 4);
+            channel.read(payload, position + 4);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != payload.getInt(length)) {
+                break;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array(), 0, length));
+            if (payload.get(0) == BATCH) {
+                in.readByte();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    in.readInt();
+                    target.apply(decode(in));
+                }
+                applied += count;
+            } else {
+                target.apply(decode(in));
+                applied++;
+            }
+            position += 4 + length + 4;
+        }
+
+        channel.truncate(position);
+        channel.position(position);
+        records = applied;
+        return applied;
+    }
+
+    // method to empty the log after a checkpoint has saved every change
+    void reset() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        records = 0;
+    }
+
+    // number of records since the last checkpoint
+    int size() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // frames the record that was built in bytes and forces it to disk
+    // while a batch is open, the record is only added to the batch
+    // if the record cannot be written completely, whatever part of it reached the file is cut off again, so the
+    // next record follows the last good one, and the caller leaves the change out
+    private void append() throws IOException {
+        out.flush();
+        if (batch != null) {
+            DataOutputStream batchOut = new DataOutputStream(batch);
+            batchOut.writeInt(bytes.size());
+            bytes.writeTo(batchOut);
+            batchRecords++;
+            return;
+        }
+        byte[] payload = bytes.toByteArray();
+        crc.reset();
+        crc.update(payload);
+
+        ByteBuffer frame = ByteBuffer.allocate(4 + payload.length + 4);
+        frame.putInt(payload.length).put(payload).putInt((int) crc.getValue()).flip();
+        long start = channel.position();
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException ignored) {
+                // replay stops at the damaged record anyway
+            }
+            throw e;
+        }
+        records++;
+    }
+
+    private void writeOptional(String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static change decode(DataInputStream in) throws IOException {
+        change entry = new change();
+        entry.type = in.readByte();
+        entry.engineNumber = in.readUTF();
+        if (entry.type == ADD) {
+            entry.date = in.readInt();
+            entry.stockLabel = in.readUTF();
+            entry.brand = in.readUTF();
+            entry.status = in.readUTF();
+        } else if (entry.type == EDIT) {
+            entry.date = in.readInt();
+            entry.stockLabel = in.readBoolean() ? in.readUTF() : null;
+            entry.brand = in.readBoolean() ? in.readUTF() : null;
+            entry.status = in.readBoolean() ? in.readUTF() : null;
+        }
+        return entry;
+    }
+}
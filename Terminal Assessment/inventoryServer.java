@@ -0,0 +1,451 @@
+// packages for the embedded HTTP server, which is part of the JDK
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+//more specific packages
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// embedded HTTP server that gives the front counters and the web shop JSON access to the inventory
+// started with: java invStockBST3 --serve <port> <csv file> [--bind <address>], which loads the CSV file first
+//
+// the server only listens on the loopback address unless --bind gives another one, such as 0.0.0.0 for every
+// network interface; reading is open to anyone who can reach it, but adding, editing, deleting and saving
+// need the token in the MOTORPH_API_TOKEN environment variable, sent as "Authorization: Bearer <token>"
+// without a token, changes are only accepted while the server is bound to loopback, so the inventory
+// is never writable from the network by accident
+//
+//   GET    /items                          every unit, in the current display order
+//   GET    /items?by=<criterion>&value=..  search, with the criteria of the batch mode (brand, status, prefix, ...)
+//                &to=..                    and the end of the range for dates and range
+//   GET    /items/<engine number>          one unit, 404 if it is not in the inventory
+//   POST   /items                          add a unit: {"brand": .., "engineNumber": ..} like addItem, or with
+//                                          "date", "stockLabel" and "status" as well like a CSV row
+//   PATCH  /items/<engine number>          edit a unit, fields that are left out keep their value
+//   DELETE /items/<engine number>          delete a unit
+//   POST   /save                           write the inventory to the CSV file it was loaded from
+//
+// the server only needs a few threads: one dispatcher thread accepts the connections and reads the requests,
+// and each request then runs on a virtual thread when the JDK has them (Java 21 and later)
+// lookups are optimistic reads that take no lock (see invStockBST3), so thousands of them can run at once
+class inventoryServer {
+    // connections waiting to be accepted before new ones are refused
+    static final int BACKLOG = 4096;
+    // environment variable with the token that allows changes, kept out of the command line so ps does not show it
+    static final String TOKEN_VARIABLE = "MOTORPH_API_TOKEN";
+
+    private final invStockBST3 inventory;
+    private final String filename;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // token that the requests that change something have to send, null if there is none
+    private final byte[] token;
+
+    // host is the address to listen on, null for loopback
+    inventoryServer(invStockBST3 inventory, String filename, String host, int port, String token) throws IOException {
+        this.inventory = inventory;
+        this.filename = filename;
+        this.token = token == null || token.isEmpty() ? null : token.getBytes(StandardCharsets.UTF_8);
+        InetAddress address = host == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+        executor = newExecutor();
+        server = HttpServer.create(new InetSocketAddress(address, port), BACKLOG);
+        server.setExecutor(executor);
+        server.createContext("/items", this::handleItems);
+        server.createContext("/save", this::handleSave);
+    }
+
+    // method to start answering requests, it returns straight away and the server keeps the program running
+    void start() {
+        server.start();
+        System.out.println("Serving the inventory on " + server.getAddress().getAddress().getHostAddress()
+                + " port " + server.getAddress().getPort() + ".");
+        if (token == null && !server.getAddress().getAddress().isLoopbackAddress()) {
+            System.out.println("Changes are refused, set " + TOKEN_VARIABLE + " to allow them.");
+        }
+    }
+
+    // method to stop the server, requests that are still running get up to a second to finish
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    // returns true if a request may change the inventory, or answers it with 401 or 403 and returns false
+    // the token is compared in constant time, so the time taken does not give away how much of it was right
+    private boolean allowChange(HttpExchange exchange) throws IOException {
+        if (token == null) {
+            if (server.getAddress().getAddress().isLoopbackAddress()) {
+                return true;
+            }
+            sendError(exchange, 403, "changes are disabled, the server has no " + TOKEN_VARIABLE);
+            return false;
+        }
+
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null && authorization.startsWith("Bearer ")
+                && MessageDigest.isEqual(token, authorization.substring("Bearer ".length()).getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+        sendError(exchange, 401, "missing or wrong token");
+        return false;
+    }
+
+    // returns an executor that starts a virtual thread per request, found by reflection so the code still
+    // compiles and runs on Java 17
+    // without virtual threads the requests share one platform thread per core; the handlers only ever wait
+    // for the inventory lock, never for the connection, so that is enough to keep up
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    private void handleItems(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            // the context also matches paths such as /itemsX, which are not part of the API
+            if (!path.equals("/items") && !path.startsWith("/items/")) {
+                sendError(exchange, 404, "not found");
+                return;
+            }
+            String engineNumber = path.length() > "/items/".length()
+                    ? URLDecoder.decode(path.substring("/items/".length()), StandardCharsets.UTF_8) : null;
+            String method = exchange.getRequestMethod();
+
+            if (engineNumber == null) {
+                if (method.equals("GET")) {
+                    listItems(exchange);
+                } else if (method.equals("POST")) {
+                    if (allowChange(exchange)) {
+                        addItem(exchange);
+                    }
+                } else {
+                    sendError(exchange, 405, "method not allowed");
+                }
+            } else if (method.equals("GET")) {
+                invStockBST3.treeNode node = inventory.find(engineNumber);
+                if (node == null) {
+                    sendError(exchange, 404, "not found");
+                } else {
+                    send(exchange, 200, out -> writeNode(out, node));
+                }
+            } else if (method.equals("PATCH")) {
+                if (allowChange(exchange)) {
+                    editItem(exchange, engineNumber);
+                }
+            } else if (method.equals("DELETE")) {
+                if (allowChange(exchange)) {
+                    invStockBST3.batchReport report = inventory.deleteAll(List.of(engineNumber));
+                    sendOutcome(exchange, report, 200);
+                }
+            } else {
+                sendError(exchange, 405, "method not allowed");
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleSave(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendError(exchange, 405, "method not allowed");
+                return;
+            }
+            if (!allowChange(exchange)) {
+                return;
+            }
+            inventory.saveCSV(filename);
+            send(exchange, 200, out -> out.write("{\"result\":\"SAVED\",\"size\":" + inventory.size() + "}"));
+        } catch (IOException e) {
+            sendError(exchange, 500, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // lists the whole inventory, or searches it when the query has a criterion
+    // the items are written as they come, so the count follows them
+    private void listItems(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        Iterable<invStockBST3.treeNode> items;
+        if (query.containsKey("by")) {
+            int choice = batchRunner.criterion(query.get("by"));
+            if (choice == 0) {
+                throw new IllegalArgumentException("unknown criterion " + query.get("by"));
+            }
+            items = inventory.matches(choice, query.getOrDefault("value", ""), query.getOrDefault("to", ""));
+        } else {
+            items = inventory.listInventory();
+        }
+
+        send(exchange, 200, out -> {
+            out.write("{\"items\":[");
+            int count = 0;
+            for (invStockBST3.treeNode node : items) {
+                if (count++ > 0) {
+                    out.write(',');
+                }
+                writeNode(out, node);
+            }
+            out.write("],\"count\":" + count + "}");
+        });
+    }
+
+    // adds one unit through addAll, which reports duplicates and invalid dates instead of printing them
+    private void addItem(HttpExchange exchange) throws IOException {
+        Map<String, String> body = parseObject(readBody(exchange));
+        String engineNumber = body.get("engineNumber");
+        String brand = body.get("brand");
+        if (engineNumber == null || engineNumber.isEmpty() || brand == null) {
+            throw new IllegalArgumentException("brand and engineNumber are required");
+        }
+
+        // same defaults as addItem for the fields that are left out
+        int date = body.containsKey("date") ? invStockBST3.stockDate.parse(body.get("date"))
+                : (int) LocalDate.now().toEpochDay();
+        invStockBST3.treeNode node = new invStockBST3.treeNode(date, body.getOrDefault("stockLabel", "New"), brand,
+                engineNumber, body.getOrDefault("status", "On-hand"), invStockBST3.engineKey.pack(engineNumber));
+        sendOutcome(exchange, inventory.addAll(List.of(node)), 201);
+    }
+
+    private void editItem(HttpExchange exchange, String engineNumber) throws IOException {
+        Map<String, String> body = parseObject(readBody(exchange));
+        int date = invStockBST3.stockDate.INVALID;
+        if (body.containsKey("date")) {
+            date = invStockBST3.stockDate.parse(body.get("date"));
+            if (date == invStockBST3.stockDate.INVALID) {
+                throw new IllegalArgumentException("invalid date " + body.get("date"));
+            }
+        }
+        invStockBST3.itemUpdate update = new invStockBST3.itemUpdate(engineNumber, date, body.get("stockLabel"),
+                body.get("brand"), body.get("status"));
+        sendOutcome(exchange, inventory.updateAll(List.of(update)), 200);
+    }
+
+    // answers with the outcome of a one-item batch, mapped onto the matching status code
+    private void sendOutcome(HttpExchange exchange, invStockBST3.batchReport report, int success) throws IOException {
+        invStockBST3.outcome result = report.outcomes[0];
+        int status;
+        switch (result) {
+            case NOT_FOUND: status = 404; break;
+            case DUPLICATE: status = 409; break;
+            case INVALID_DATE: status = 400; break;
+            case NOT_LOGGED: status = 500; break;
+            default: status = success; break;
+        }
+        send(exchange, status, out -> out.write("{\"result\":" + quote(result.name())
+                + ",\"engineNumber\":" + quote(report.engineNumbers[0]) + "}"));
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, out -> out.write("{\"error\":" + quote(message) + "}"));
+    }
+
+    // writes the body of a response
+    interface bodyWriter {
+        void write(Writer out) throws IOException;
+    }
+
+    // sends a JSON response
+    // the body is streamed in chunks as it is written, so listing a large inventory does not build one huge string
+    private static void send(HttpExchange exchange, int status, bodyWriter body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 1 << 16)) {
+            body.write(out);
+        }
+    }
+
+    private static void writeNode(Writer out, invStockBST3.treeNode node) throws IOException {
+        out.write("{\"date\":" + quote(invStockBST3.stockDate.format(node.date))
+                + ",\"stockLabel\":" + quote(node.stockLabel)
+                + ",\"brand\":" + quote(node.brand)
+                + ",\"engineNumber\":" + quote(node.engineNumber)
+                + ",\"status\":" + quote(node.status) + "}");
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        return new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    // splits a query string such as by=brand&value=Honda into its decoded parameters
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    // reads a flat JSON object, whose values are strings, numbers, true, false or null, into a map of strings
+    // that is all the request bodies contain, so no JSON library is needed; null values are left out
+    // every value ends up as a field of the CSV file, which cannot hold a line break, so those are refused
+    static Map<String, String> parseObject(String json) {
+        jsonReader reader = new jsonReader(json);
+        Map<String, String> fields = new HashMap<>();
+        reader.expect('{');
+        if (!reader.consume('}')) {
+            do {
+                String name = reader.readString();
+                reader.expect(':');
+                String value = reader.readValue();
+                if (value != null && (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)) {
+                    throw new IllegalArgumentException(name + " cannot contain a line break");
+                }
+                if (value != null) {
+                    fields.put(name, value);
+                }
+            } while (reader.consume(','));
+            reader.expect('}');
+        }
+        if (!reader.atEnd()) {
+            throw new IllegalArgumentException("unexpected text after the JSON object");
+        }
+        return fields;
+    }
+
+    // returns a string as a quoted JSON string
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    // reads the tokens of a flat JSON object, every mistake is an IllegalArgumentException (a 400 response)
+    private static class jsonReader {
+        private final String text;
+        private int position;
+
+        jsonReader(String text) {
+            this.text = text;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("expected '" + c + "' at position " + position);
+            }
+        }
+
+        boolean consume(char c) {
+            skipSpace();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        boolean atEnd() {
+            skipSpace();
+            return position == text.length();
+        }
+
+        // reads a value as text, null for a JSON null
+        String readValue() {
+            skipSpace();
+            if (position < text.length() && text.charAt(position) == '"') {
+                return readString();
+            }
+            int start = position;
+            while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.isEmpty() || !(literal.equals("true") || literal.equals("false") || literal.matches("-?[0-9.eE+-]+"))) {
+                throw new IllegalArgumentException("unsupported JSON value at position " + start);
+            }
+            return literal;
+        }
+
+        String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("bad unicode escape at position " + position);
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("bad unicode escape at position " + position);
+                        }
+                        position += 4;
+                        break;
+                    default: value.append(escaped); break;
+                }
+            }
+            throw new IllegalArgumentException("unterminated string");
+        }
+
+        private void skipSpace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+// packages for reading and writing the binary snapshot file
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+//more specific packages
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// binary snapshot of the whole BST, so the inventory can be restored without parsing any text
+// the nodes are stored in pre-order together with which children each one has, so reading them back
+// gives the exact same tree: no comparisons, no rotations, only the heights are worked out again
+//
+// layout (all numbers big-endian, as written by DataOutputStream):
+//   magic (int), version (short), flags (byte), node count (int)
+//   dictionary: value count (int), then every value as a length-prefixed UTF string
+//   nodes in pre-order: children (byte), key (long), date (int),
+//                       stock label, brand and status as dictionary codes (int), engine number (UTF string)
+//   since version 2: key block, one entry per node in engine number order: key (long), offset of its node (long)
+//                    footer: offset of the key block (long), magic (int)
+// the key block lets mappedSnapshot look up a unit with a binary search on the file itself
+class inventorySnapshot {
+    static final int MAGIC = 0x4D504853; // "MPHS"
+    static final short VERSION = 2;
+
+    // positions in the header
+    static final int FLAGS_OFFSET = 6;
+    static final int COUNT_OFFSET = 7;
+    static final int DICTIONARY_OFFSET = 11;
+    // positions of the fields within a node
+    static final int KEY_FIELD = 1;
+    static final int DATE_FIELD = 9;
+    static final int STOCK_LABEL_FIELD = 13;
+    static final int BRAND_FIELD = 17;
+    static final int STATUS_FIELD = 21;
+    static final int ENGINE_FIELD = 25;
+    // sizes of a key block entry and of the footer
+    static final int KEY_ENTRY_SIZE = 16;
+    static final int FOOTER_SIZE = 12;
+
+    // bits of the flags byte
+    static final int SORTED_BY_BRAND = 1;
+    // bits of the children byte of a node
+    static final int HAS_LEFT = 1;
+    static final int HAS_RIGHT = 2;
+
+    // tree read back from a snapshot
+    static class contents {
+        invStockBST3.treeNode root;
+        int size;
+        boolean sortedByBrand;
+    }
+
+    // method to write the tree to a snapshot file
+    // like the CSV, the snapshot is written to a temporary file first and renamed over the old one
+    static void write(Path file, invStockBST3.treeNode root, int size, boolean sortedByBrand) throws IOException {
+        Path target = file.toAbsolutePath();
+        // stock labels, brands and statuses repeat a lot, so each distinct value is stored once
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        for (invStockBST3.treeNode node : inOrder(root)) {
+            code(codes, dictionary, node.stockLabel);
+            code(codes, dictionary, node.brand);
+            code(codes, dictionary, node.status);
+        }
+
+        Path temp = invStockBST3.createTempFile(target);
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+                 countingStream counter = new countingStream(new BufferedOutputStream(fileOut, 1 << 16));
+                 DataOutputStream out = new DataOutputStream(counter)) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeByte(sortedByBrand ? SORTED_BY_BRAND : 0);
+                out.writeInt(size);
+
+                out.writeInt(dictionary.size());
+                for (String value : dictionary) {
+                    out.writeUTF(value);
+                }
+
+                // offsets of the nodes, by their position in engine number order
+                long[] offsets = new long[size];
+                if (root != null) {
+                    writeNode(out, counter, root, codes, offsets, 0);
+                }
+
+                long keyBlock = counter.count;
+                int rank = 0;
+                for (invStockBST3.treeNode node : inOrder(root)) {
+                    out.writeLong(node.key);
+                    out.writeLong(offsets[rank++]);
+                }
+                out.writeLong(keyBlock);
+                out.writeInt(MAGIC);
+
+                // makes sure the whole snapshot is on the disk before it replaces the old one
+                out.flush();
+                fileOut.getFD().sync();
+            }
+
+            invStockBST3.replaceFile(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // method to read a snapshot file back into a tree
+    // a damaged file is reported with an IOException: counts and dictionary codes that do not fit the file,
+    // a tree deeper than any AVL tree, or a key block that does not take up the rest of the file
+    static contents read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an inventory snapshot: " + file);
+            }
+            // version 1 files are the same up to the end of the nodes, which is where reading stops
+            short version = in.readShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+
+            contents result = new contents();
+            result.sortedByBrand = (in.readByte() & SORTED_BY_BRAND) != 0;
+            result.size = in.readInt();
+            if (result.size < 0) {
+                throw damaged(file, "node count " + result.size);
+            }
+
+            // every node has three dictionary values, and the writer only stores values that are used
+            int values = in.readInt();
+            if (values < 0 || values > 3L * result.size) {
+                throw damaged(file, "dictionary size " + values);
+            }
+            String[] dictionary = new String[values];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = in.readUTF();
+            }
+
+            nodeReader nodes = new nodeReader(in, dictionary, file, result.size);
+            if (result.size > 0) {
+                result.root = nodes.readNode(0);
+            }
+            if (nodes.remaining != 0) {
+                throw damaged(file, "node count " + result.size + ", but " + (result.size - nodes.remaining) + " nodes");
+            }
+
+            if (version >= 2) {
+                // the key block is not needed to rebuild the tree, only its length is checked
+                long keyBytes = (long) result.size * KEY_ENTRY_SIZE;
+                in.skipNBytes(keyBytes);
+                long keyBlock = in.readLong();
+                if (in.readInt() != MAGIC || in.read() != -1
+                        || keyBlock + keyBytes + FOOTER_SIZE != Files.size(file)) {
+                    throw damaged(file, "key block");
+                }
+            }
+            return result;
+        } catch (EOFException e) {
+            throw damaged(file, "unexpected end of file");
+        }
+    }
+
+    private static IOException damaged(Path file, String what) {
+        return new IOException("Damaged snapshot (" + what + "): " + file);
+    }
+
+    // writes a node and then its subtrees in pre-order, and returns the number of nodes written
+    // before marks how many nodes come before this subtree in engine number order, so once the left subtree
+    // is written the position of the node itself is known and its offset can be put in the right place
+    private static int writeNode(DataOutputStream out, countingStream counter, invStockBST3.treeNode node,
+                                 Map<String, Integer> codes, long[] offsets, int before) throws IOException {
+        // DataOutputStream has no buffer of its own, so the counter already includes everything written
+        long offset = counter.count;
+        out.writeByte((node.left != null ? HAS_LEFT : 0) | (node.right != null ? HAS_RIGHT : 0));
+        out.writeLong(node.key);
+        out.writeInt(node.date);
+        out.writeInt(codes.get(node.stockLabel));
+        out.writeInt(codes.get(node.brand));
+        out.writeInt(codes.get(node.status));
+        out.writeUTF(node.engineNumber);
+
+        int leftSize = node.left == null ? 0 : writeNode(out, counter, node.left, codes, offsets, before);
+        offsets[before + leftSize] = offset;
+        int rightSize = node.right == null ? 0 : writeNode(out, counter, node.right, codes, offsets, before + leftSize + 1);
+        return leftSize + 1 + rightSize;
+    }
+
+    // reads the nodes of a snapshot and checks them against the header as it goes
+    private static class nodeReader {
+        private final DataInputStream in;
+        private final String[] dictionary;
+        private final Path file;
+        // nodes the header announced that have not been read yet
+        int remaining;
+
+        nodeReader(DataInputStream in, String[] dictionary, Path file, int size) {
+            this.in = in;
+            this.dictionary = dictionary;
+            this.file = file;
+            this.remaining = size;
+        }
+
+        // reads a node and then its subtrees, which follow it in pre-order
+        // the recursion is only as deep as the tree, which is at most about 1.44 log n for an AVL tree,
+        // so a deeper one can only come from a damaged file
+        invStockBST3.treeNode readNode(int depth) throws IOException {
+            if (remaining-- == 0) {
+                throw damaged(file, "more nodes than the node count");
+            }
+            if (depth >= invStockBST3.MAX_HEIGHT) {
+                throw damaged(file, "tree deeper than " + invStockBST3.MAX_HEIGHT);
+            }
+            int children = in.readByte();
+            if ((children & ~(HAS_LEFT | HAS_RIGHT)) != 0) {
+                throw damaged(file, "children " + children);
+            }
+            long key = in.readLong();
+            int date = in.readInt();
+            String stockLabel = value(in.readInt());
+            String brand = value(in.readInt());
+            String status = value(in.readInt());
+            String engineNumber = in.readUTF();
+            // searches compare the packed keys, so a key that does not belong to its engine number would hide the unit
+            if (key != invStockBST3.engineKey.pack(engineNumber)) {
+                throw damaged(file, "key of engine number " + engineNumber);
+            }
+            invStockBST3.treeNode node = new invStockBST3.treeNode(date, stockLabel, brand, engineNumber, status, key);
+
+            if ((children & HAS_LEFT) != 0) {
+                node.left = readNode(depth + 1);
+            }
+            if ((children & HAS_RIGHT) != 0) {
+                node.right = readNode(depth + 1);
+            }
+            node.height = 1 + Math.max(node.left == null ? 0 : node.left.height, node.right == null ? 0 : node.right.height);
+            return node;
+        }
+
+        private String value(int code) throws IOException {
+            if (code < 0 || code >= dictionary.length) {
+                throw damaged(file, "dictionary code " + code);
+            }
+            return dictionary[code];
+        }
+    }
+
+    // returns the dictionary code of a value, adding the value if it is new
+    private static int code(Map<String, Integer> codes, List<String> dictionary, String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            codes.put(value, code);
+            dictionary.add(value);
+        }
+        return code;
+    }
+
+    private static Iterable<invStockBST3.treeNode> inOrder(invStockBST3.treeNode root) {
+        return () -> new invStockBST3.inOrderIterator(root);
+    }
+
+    // output stream that counts the bytes written through it, so the offset of every node is known
+    // a long is used because DataOutputStream.size stops counting at 2 GB
+    private static class countingStream extends FilterOutputStream {
+        long count;
+
+        countingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
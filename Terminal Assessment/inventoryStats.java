@@ -0,0 +1,167 @@
+// packages for publishing the statistics through JMX
+import java.lang.management.ManagementFactory;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+//more specific packages
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// latency histograms of every public operation of an invStockBST3, and gauges for the shape of its BST
+// the histograms show where the time goes when the system gets slow: a search criterion with a high p99 is
+// a full scan, a high write or checkpoint p999 is disk I/O, and a tree height far above 1.44 log n would be
+// a degenerate tree
+//
+// the same numbers are shown by the Show Statistics menu option and published through JMX as
+// MotorPH:type=Inventory, where JConsole or any other JMX client can read and graph them:
+//   NodeCount, TreeHeight, DateIndexSize, StockLabelIndexSize, BrandIndexSize, StatusIndexSize, PendingLogRecords,
+//   SearchCacheEntries, SearchCacheHits, SearchCacheMisses
+//   <operation>.count, <operation>.p50Nanos, <operation>.p99Nanos, <operation>.p999Nanos, <operation>.maxNanos
+class inventoryStats implements DynamicMBean {
+    static final String OBJECT_NAME = "MotorPH:type=Inventory";
+
+    // every operation that is timed, in the order they are listed
+    static final List<String> OPERATIONS = List.of(
+            "load", "add", "delete", "edit",
+            "search.date", "search.label", "search.brand", "search.engine", "search.status",
+            "search.key", "search.dates", "search.prefix", "search.range",
+            "sort", "display", "list", "write", "checkpoint",
+            "snapshot.save", "snapshot.load", "batch.add", "batch.delete", "batch.update");
+
+    private static final String[] STATISTICS = {"count", "p50Nanos", "p99Nanos", "p999Nanos", "maxNanos"};
+
+    // histograms are created the first time their operation runs
+    private final Map<String, latencyHistogram> histograms = new ConcurrentHashMap<>();
+    // reads the gauges of the inventory, each call takes a consistent view of them
+    private final Supplier<Map<String, Long>> gauges;
+
+    inventoryStats(Supplier<Map<String, Long>> gauges) {
+        this.gauges = gauges;
+    }
+
+    // method to record an operation that started at a System.nanoTime() value
+    void record(String operation, long started) {
+        histograms.computeIfAbsent(operation, name -> new latencyHistogram()).record(System.nanoTime() - started);
+    }
+
+    // returns the histogram of an operation, or null if it never ran
+    latencyHistogram histogram(String operation) {
+        return histograms.get(operation);
+    }
+
+    // method to publish the statistics through the platform MBean server
+    // only one inventory can be registered under the name, the one the program is working with
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("Error publishing statistics through JMX: " + e.getMessage());
+        }
+    }
+
+    // method to print the gauges and a table of the operations that have run
+    void print() {
+        System.out.println("Inventory statistics:");
+        for (Map.Entry<String, Long> gauge : gauges.get().entrySet()) {
+            System.out.println("- " + gauge.getKey() + ": " + gauge.getValue());
+        }
+
+        System.out.println(String.format("%-15s %10s %10s %10s %10s %10s", "Operation", "Count", "p50", "p99", "p999", "Max"));
+        boolean any = false;
+        for (String operation : OPERATIONS) {
+            latencyHistogram histogram = histograms.get(operation);
+            if (histogram == null || histogram.count() == 0) {
+                continue;
+            }
+            System.out.println(String.format("%-15s %10d %10s %10s %10s %10s", operation, histogram.count(),
+                    latencyHistogram.format(histogram.percentile(0.5)), latencyHistogram.format(histogram.percentile(0.99)),
+                    latencyHistogram.format(histogram.percentile(0.999)), latencyHistogram.format(histogram.max())));
+            any = true;
+        }
+        if (!any) {
+            System.out.println("No operations recorded yet.");
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long gauge = gauges.get().get(attribute);
+        if (gauge != null) {
+            return gauge;
+        }
+
+        int dot = attribute.lastIndexOf('.');
+        if (dot > 0 && OPERATIONS.contains(attribute.substring(0, dot))) {
+            latencyHistogram histogram = histograms.get(attribute.substring(0, dot));
+            switch (attribute.substring(dot + 1)) {
+                case "count": return histogram == null ? 0L : histogram.count();
+                case "p50Nanos": return histogram == null ? 0L : histogram.percentile(0.5);
+                case "p99Nanos": return histogram == null ? 0L : histogram.percentile(0.99);
+                case "p999Nanos": return histogram == null ? 0L : histogram.percentile(0.999);
+                case "maxNanos": return histogram == null ? 0L : histogram.max();
+                default: break;
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList values = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                values.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // attributes that do not exist are left out, as the interface asks
+            }
+        }
+        return values;
+    }
+
+    // the statistics are read-only
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String gauge : gauges.get().keySet()) {
+            attributes.add(new MBeanAttributeInfo(gauge, "long", gauge, true, false, false));
+        }
+        for (String operation : OPERATIONS) {
+            for (String statistic : STATISTICS) {
+                String name = operation + "." + statistic;
+                attributes.add(new MBeanAttributeInfo(name, "long", statistic + " of " + operation, true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Latency histograms and tree health of the inventory",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
@@ -0,0 +1,103 @@
+// packages for counting from several threads without a lock
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// histogram of operation durations in nanoseconds, cheap enough to record every call
+// recording is one bucket calculation and a few atomic increments, there is no lock and no allocation
+//
+// the buckets are log-linear: every power of two is split into SUB_COUNT equal buckets, so a bucket is never
+// wider than 1/SUB_COUNT of the values in it and a percentile is at most about 6% too high,
+// whether the duration is 800 nanoseconds or 8 seconds
+class latencyHistogram {
+    static final int SUB_BITS = 4;
+    static final int SUB_COUNT = 1 << SUB_BITS;
+    // values below SUB_COUNT get one bucket each, then SUB_COUNT buckets for every power of two up to 2^62,
+    // the highest one a long can hold
+    static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    // method to record one duration
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    long mean() {
+        long calls = count();
+        return calls == 0 ? 0 : total.sum() / calls;
+    }
+
+    // returns the duration that a fraction of the calls (0.99 for p99) did not exceed, 0 if nothing was recorded
+    // the answer is the upper end of the bucket the percentile falls in, capped at the longest call
+    long percentile(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long recorded = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            recorded += snapshot[i];
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+
+        long wanted = Math.max(1, (long) Math.ceil(fraction * recorded));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= wanted) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    // returns the bucket of a duration
+    static int bucket(long nanos) {
+        if (nanos < SUB_COUNT) {
+            return (int) nanos;
+        }
+        // the highest bit picks the power of two, the SUB_BITS bits below it pick the bucket within it
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((nanos >>> shift) - SUB_COUNT);
+    }
+
+    // returns the largest duration that falls in a bucket
+    static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long lowest = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    // method to format a duration for people, such as 850 ns, 12.3 us, 4.5 ms or 1.2 s
+    static String format(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        } else if (nanos < 1_000_000) {
+            return String.format("%.1f us", nanos / 1e3);
+        } else if (nanos < 1_000_000_000) {
+            return String.format("%.1f ms", nanos / 1e6);
+        }
+        return String.format("%.2f s", nanos / 1e9);
+    }
+}
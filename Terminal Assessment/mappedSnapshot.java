@@ -0,0 +1,272 @@
+// packages for memory-mapping the snapshot file
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+//more specific packages
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+// read-only storage mode that works straight on a memory-mapped snapshot file (version 2 or later)
+// opening it only reads the header, the dictionary and the footer, so startup does not depend on the inventory size
+// lookups binary-search the key block at the end of the file, and a unit only becomes a treeNode when it is returned
+// the operating system pages the file in as it is used, so the resident size follows the units actually touched
+// start the menu in this mode with: java invStockBST3 --mapped <snapshot file>
+// Load Inventory Snapshot then maps another file, and the changes of the menu are refused
+class mappedSnapshot implements stockInventory {
+    private MappedByteBuffer buffer;
+    private String[] dictionary = new String[0];
+    private final HashMap<String, Integer> codes = new HashMap<>();
+    private int size;
+    private int keyBlock;
+
+    // method to map a snapshot file, replacing the one mapped before
+    public void open(String filename) {
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            // a single mapping can never be larger than 2 GB
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + filename);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (mapped.limit() < inventorySnapshot.DICTIONARY_OFFSET + inventorySnapshot.FOOTER_SIZE
+                    || mapped.getInt(0) != inventorySnapshot.MAGIC
+                    || mapped.getInt(mapped.limit() - 4) != inventorySnapshot.MAGIC) {
+                throw new IOException("Not an inventory snapshot with a key block: " + filename);
+            }
+            short version = mapped.getShort(4);
+            if (version < 2 || version > inventorySnapshot.VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + filename);
+            }
+
+            // the key block has to fill the file up to the footer, or the lookups would read past it
+            int units = mapped.getInt(inventorySnapshot.COUNT_OFFSET);
+            long keys = mapped.getLong(mapped.limit() - inventorySnapshot.FOOTER_SIZE);
+            if (units < 0 || keys < inventorySnapshot.DICTIONARY_OFFSET + 4
+                    || keys + (long) units * inventorySnapshot.KEY_ENTRY_SIZE + inventorySnapshot.FOOTER_SIZE != mapped.limit()) {
+                throw new IOException("Damaged snapshot (node count or key block): " + filename);
+            }
+
+            // the dictionary is small, so it is the only part read up front
+            int count = mapped.getInt(inventorySnapshot.DICTIONARY_OFFSET);
+            if (count < 0 || count > 3L * units) {
+                throw new IOException("Damaged snapshot (dictionary size " + count + "): " + filename);
+            }
+            String[] values = new String[count];
+            HashMap<String, Integer> valueCodes = new HashMap<>();
+            int position = inventorySnapshot.DICTIONARY_OFFSET + 4;
+            for (int i = 0; i < count; i++) {
+                if (position + 2 > keys || position + 2 + (mapped.getShort(position) & 0xFFFF) > keys) {
+                    throw new IOException("Damaged snapshot (dictionary): " + filename);
+                }
+                values[i] = readUTF(mapped, position);
+                valueCodes.put(values[i], i);
+                position += 2 + (mapped.getShort(position) & 0xFFFF);
+            }
+
+            buffer = mapped;
+            dictionary = values;
+            codes.clear();
+            codes.putAll(valueCodes);
+            size = units;
+            keyBlock = (int) keys;
+            System.out.println("Snapshot mapped successfully.");
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Error reading snapshot file: " + e.getMessage());
+        }
+    }
+
+    // method to map another snapshot file from the menu
+    public void loadSnapshot(String filename) {
+        open(filename);
+    }
+
+    // the snapshot file is never written to, so every change is refused
+    public void loadFromCSV(String filename) {
+        readOnly();
+    }
+
+    public void addItem(String brand, String engineNumber) {
+        readOnly();
+    }
+
+    public void deleteItem(String engineNumber) {
+        readOnly();
+    }
+
+    public void editItem(String engineNumber) {
+        readOnly();
+    }
+
+    public boolean update(invStockBST3.itemUpdate update) {
+        return false;
+    }
+
+    private static void readOnly() {
+        stockInventory.unavailable("Changing a mapped snapshot");
+    }
+
+    // method to find a unit by engine number, or null
+    // binary search over the key block, so only about log n entries of the file are touched
+    public invStockBST3.treeNode find(String engineNumber) {
+        int offset = findOffset(engineNumber);
+        return offset < 0 ? null : decode(offset);
+    }
+
+    // method to search the inventory with the first five choices of stockInventory.searchInventory
+    // dictionary fields are matched by comparing their codes, so only the matching units are decoded
+    public List<invStockBST3.treeNode> search(int choice, String searchValue) {
+        List<invStockBST3.treeNode> matches = new ArrayList<>();
+        switch (choice) {
+            case 1: {
+                int epochDay = invStockBST3.stockDate.parse(searchValue);
+                if (epochDay != invStockBST3.stockDate.INVALID) {
+                    scan(offset -> buffer.getInt(offset + inventorySnapshot.DATE_FIELD) == epochDay, matches);
+                }
+                break;
+            }
+            case 2: scanCodes(inventorySnapshot.STOCK_LABEL_FIELD, searchValue, matches); break;
+            case 3: scanCodes(inventorySnapshot.BRAND_FIELD, searchValue, matches); break;
+            case 4: {
+                invStockBST3.treeNode node = find(searchValue);
+                if (node != null) matches.add(node);
+                break;
+            }
+            case 5: scanCodes(inventorySnapshot.STATUS_FIELD, searchValue, matches); break;
+            default: break;
+        }
+        return matches;
+    }
+
+    // matches of a search for the prompts of stockInventory.searchInventory
+    // the key block only orders the units by engine number, so the other searches are not available in this mode
+    public Iterable<invStockBST3.treeNode> matches(int choice, String searchValue, String to) {
+        return choice < 1 || choice > 5 ? null : search(choice, searchValue);
+    }
+
+    // method to display the inventory in engine number order
+    public void displayInventory() {
+        if (size == 0) {
+            System.out.println("Inventory is empty.");
+            return;
+        }
+        System.out.println("Current Inventory:");
+        for (int i = 0; i < size; i++) {
+            invStockBST3.displayNode(decode(offsetAt(i)));
+        }
+    }
+
+    // method to write the mapped units to a CSV file in engine number order, see invStockBST3.writeCSVFile
+    public void saveCSV(String filename) throws IOException {
+        invStockBST3.writeCSVFile(filename, out -> {
+            for (int i = 0; i < size; i++) {
+                invStockBST3.treeNode node = decode(offsetAt(i));
+                out.row(node.date, node.stockLabel, node.brand, node.engineNumber, node.status);
+            }
+        });
+    }
+
+    // number of units in the inventory
+    public int size() {
+        return size;
+    }
+
+    // size of the mapped file, of which only the touched pages are actually in memory
+    public long mappedBytes() {
+        return buffer == null ? 0 : buffer.limit();
+    }
+
+    // returns the offset of the node with an engine number, or -1
+    private int findOffset(String engineNumber) {
+        long key = invStockBST3.engineKey.pack(engineNumber);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = keyBlock + middle * inventorySnapshot.KEY_ENTRY_SIZE;
+            long entryKey = buffer.getLong(entry);
+            int offset = (int) buffer.getLong(entry + 8);
+
+            // the engine number is only read from the node when one of the two could not be packed
+            int cmp;
+            if (key != invStockBST3.engineKey.NO_KEY && entryKey != invStockBST3.engineKey.NO_KEY) {
+                cmp = Long.compare(entryKey, key);
+            } else {
+                cmp = readUTF(buffer, offset + inventorySnapshot.ENGINE_FIELD).compareTo(engineNumber);
+            }
+
+            if (cmp == 0) {
+                return offset;
+            } else if (cmp < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return -1;
+    }
+
+    // offset of the i-th node in engine number order
+    private int offsetAt(int i) {
+        return (int) buffer.getLong(keyBlock + i * inventorySnapshot.KEY_ENTRY_SIZE + 8);
+    }
+
+    // decodes every node whose offset passes the test, in engine number order
+    private void scan(IntPredicate test, List<invStockBST3.treeNode> matches) {
+        for (int i = 0; i < size; i++) {
+            int offset = offsetAt(i);
+            if (test.test(offset)) {
+                matches.add(decode(offset));
+            }
+        }
+    }
+
+    // compares a dictionary field of every node against the code of a value
+    private void scanCodes(int field, String value, List<invStockBST3.treeNode> matches) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            return;
+        }
+        int wanted = code;
+        scan(offset -> buffer.getInt(offset + field) == wanted, matches);
+    }
+
+    // materializes the node at an offset
+    // the node is not linked to any other node, it only carries the fields of the unit
+    private invStockBST3.treeNode decode(int offset) {
+        return new invStockBST3.treeNode(
+                buffer.getInt(offset + inventorySnapshot.DATE_FIELD),
+                dictionary[buffer.getInt(offset + inventorySnapshot.STOCK_LABEL_FIELD)],
+                dictionary[buffer.getInt(offset + inventorySnapshot.BRAND_FIELD)],
+                readUTF(buffer, offset + inventorySnapshot.ENGINE_FIELD),
+                dictionary[buffer.getInt(offset + inventorySnapshot.STATUS_FIELD)],
+                buffer.getLong(offset + inventorySnapshot.KEY_FIELD));
+    }
+
+    // reads a length-prefixed string written by DataOutputStream.writeUTF
+    // plain ASCII, which is what engine numbers normally are, is the same in modified UTF-8
+    private static String readUTF(MappedByteBuffer buffer, int position) {
+        int length = buffer.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[2 + length];
+        buffer.get(position, bytes);
+
+        boolean ascii = true;
+        for (int i = 2; i < bytes.length && ascii; i++) {
+            ascii = bytes[i] > 0;
+        }
+        if (ascii) {
+            return new String(bytes, 2, length, StandardCharsets.US_ASCII);
+        }
+        try {
+            return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+        } catch (IOException e) {
+            throw new IllegalStateException("Damaged string in snapshot at offset " + position, e);
+        }
+    }
+}
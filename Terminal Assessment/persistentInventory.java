@@ -0,0 +1,430 @@
+// packages for writing the CSV file
+import java.io.IOException;
+//more specific packages
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// alternative storage mode built from immutable nodes (a persistent AVL tree)
+// a change never modifies a node: it copies the nodes on the path from the root down to the change, O(log n) of them,
+// and the new path shares every other subtree with the old tree
+// every root that was ever published therefore stays a complete and consistent tree, so a reader that holds on to
+// one sees the inventory exactly as it was, for as long as it likes, while writers keep publishing new roots
+// readers take no lock at all; writers are serialized with synchronized and publish their new root through a volatile field
+// displaying and writing the inventory therefore never hold up a change, however long they take
+// start the menu in this mode with: java invStockBST3 --persistent
+class persistentInventory implements stockInventory {
+    // immutable node of the persistent tree
+    // the fields are final, so a node that a reader can reach is always fully built
+    static final class node {
+        final int date;
+        final String stockLabel;
+        final String brand;
+        final String engineNumber;
+        final String status;
+        final long key;
+        final node left;
+        final node right;
+        final int height;
+        // number of nodes in the subtree, so the size of any snapshot is known in O(1)
+        final int size;
+
+        node(int date, String stockLabel, String brand, String engineNumber, String status, long key, node left, node right) {
+            this.date = date;
+            this.stockLabel = stockLabel;
+            this.brand = brand;
+            this.engineNumber = engineNumber;
+            this.status = status;
+            this.key = key;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+
+        // copy of this node with other children
+        node withChildren(node newLeft, node newRight) {
+            return new node(date, stockLabel, brand, engineNumber, status, key, newLeft, newRight);
+        }
+
+        // copy of the fields of this node as a treeNode, for the menu prompts and displaying
+        invStockBST3.treeNode toTreeNode() {
+            return new invStockBST3.treeNode(date, stockLabel, brand, engineNumber, status, key);
+        }
+
+        @Override
+        public String toString() {
+            return "Date: " + invStockBST3.stockDate.format(date) + ", Stock Label: " + stockLabel + ", Brand: " + brand
+                    + ", Engine Number: " + engineNumber + ", Status: " + status;
+        }
+    }
+
+    // read-only view of the inventory at the moment it was taken
+    // taking one only copies the root reference, and nothing a writer does afterwards can change it
+    static final class snapshot implements Iterable<node> {
+        private final node root;
+
+        private snapshot(node root) {
+            this.root = root;
+        }
+
+        // number of units in the snapshot
+        public int size() {
+            return persistentInventory.size(root);
+        }
+
+        public int getHeight() {
+            return height(root);
+        }
+
+        // method to find a unit by engine number, or null
+        public node find(String engineNumber) {
+            long key = invStockBST3.engineKey.pack(engineNumber);
+            node current = root;
+            while (current != null) {
+                int cmp = invStockBST3.engineKey.compare(key, engineNumber, current.key, current.engineNumber);
+                if (cmp == 0) {
+                    return current;
+                }
+                current = cmp < 0 ? current.left : current.right;
+            }
+            return null;
+        }
+
+        // method to search the snapshot with the same choices as stockInventory.searchInventory
+        // to is only used by the range searches (7 and 9), as the end of the range
+        // engine numbers are looked up in the tree, every other field needs a full in-order traversal
+        public List<node> search(int choice, String searchValue, String to) {
+            List<node> matches = new ArrayList<>();
+            if (choice == 4) {
+                node match = find(searchValue);
+                if (match != null) {
+                    matches.add(match);
+                }
+                return matches;
+            }
+
+            int epochDay = choice == 1 || choice == 7 ? invStockBST3.stockDate.parse(searchValue) : invStockBST3.stockDate.INVALID;
+            int lastDay = choice == 7 ? invStockBST3.stockDate.parse(to) : invStockBST3.stockDate.INVALID;
+            long fromKey = invStockBST3.engineKey.pack(searchValue);
+            long toKey = choice == 9 ? invStockBST3.engineKey.pack(to) : invStockBST3.engineKey.NO_KEY;
+            for (node current : this) {
+                boolean match = false;
+                switch (choice) {
+                    case 1: match = current.date == epochDay; break;
+                    case 2: match = current.stockLabel.equals(searchValue); break;
+                    case 3: match = current.brand.equals(searchValue); break;
+                    case 5: match = current.status.equals(searchValue); break;
+                    case 6: match = String.valueOf(current.key).equals(searchValue); break;
+                    case 7:
+                        match = epochDay != invStockBST3.stockDate.INVALID && lastDay != invStockBST3.stockDate.INVALID
+                                && current.date >= epochDay && current.date <= lastDay;
+                        break;
+                    case 8: match = current.engineNumber.startsWith(searchValue); break;
+                    case 9:
+                        match = invStockBST3.engineKey.compare(current.key, current.engineNumber, fromKey, searchValue) >= 0
+                                && invStockBST3.engineKey.compare(current.key, current.engineNumber, toKey, to) <= 0;
+                        break;
+                    default: break;
+                }
+                if (match) {
+                    matches.add(current);
+                }
+            }
+            return matches;
+        }
+
+        // goes through the snapshot in engine number order, using an explicit stack
+        @Override
+        public Iterator<node> iterator() {
+            return new Iterator<node>() {
+                private final ArrayDeque<node> stack = new ArrayDeque<>();
+
+                {
+                    pushLeft(root);
+                }
+
+                private void pushLeft(node current) {
+                    while (current != null) {
+                        stack.push(current);
+                        current = current.left;
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return !stack.isEmpty();
+                }
+
+                @Override
+                public node next() {
+                    if (stack.isEmpty()) {
+                        throw new NoSuchElementException();
+                    }
+                    node current = stack.pop();
+                    pushLeft(current.right);
+                    return current;
+                }
+            };
+        }
+    }
+
+    // latest published version of the tree
+    private volatile node root;
+
+    // AVL balancing of the tree, see avlTree
+    // link never changes a node, it builds a copy with the new children, unless they are the ones it already has
+    private static final avlTree<node> AVL = new avlTree<node>() {
+        @Override
+        node left(node current) {
+            return current.left;
+        }
+
+        @Override
+        node right(node current) {
+            return current.right;
+        }
+
+        @Override
+        int height(node current) {
+            return persistentInventory.height(current);
+        }
+
+        @Override
+        node link(node current, node newLeft, node newRight) {
+            if (current.left == newLeft && current.right == newRight) {
+                return current;
+            }
+            return current.withChildren(newLeft, newRight);
+        }
+    };
+
+    // method to take a consistent view of the inventory, in O(1)
+    public snapshot snapshot() {
+        return new snapshot(root);
+    }
+
+    // method to load data from CSV into the tree
+    // the parsed rows are sorted and merged with the current units, then a new balanced tree is built from them
+    // readers keep using the old tree until the new one is published
+    public void loadFromCSV(String filename) {
+        csvLoader.result result;
+        try {
+            result = csvLoader.load(filename);
+        } catch (IOException e) {
+            System.err.println("Error reading CSV file: " + e.getMessage());
+            return;
+        }
+        for (String line : result.invalidRows) {
+            System.out.println("Skipping invalid row: " + line);
+        }
+
+        // List.sort is stable, so the first of several rows with the same engine number stays first
+        List<invStockBST3.treeNode> batch = result.nodes;
+        batch.sort(invStockBST3.NODE_ORDER);
+
+        synchronized (this) {
+            List<node> merged = new ArrayList<>(size(root) + batch.size());
+            Iterator<node> existing = snapshot().iterator();
+            node nextExisting = existing.hasNext() ? existing.next() : null;
+            node last = null;
+            int i = 0;
+            while (i < batch.size() || nextExisting != null) {
+                node next;
+                invStockBST3.treeNode parsed = i < batch.size() ? batch.get(i) : null;
+                // existing units win over parsed rows with the same engine number
+                if (parsed == null || (nextExisting != null && invStockBST3.engineKey.compare(nextExisting.key,
+                        nextExisting.engineNumber, parsed.key, parsed.engineNumber) <= 0)) {
+                    next = nextExisting;
+                    nextExisting = existing.hasNext() ? existing.next() : null;
+                } else {
+                    next = new node(parsed.date, parsed.stockLabel, parsed.brand, parsed.engineNumber, parsed.status,
+                            parsed.key, null, null);
+                    i++;
+                }
+
+                if (last != null && invStockBST3.engineKey.compare(last.key, last.engineNumber, next.key, next.engineNumber) == 0) {
+                    System.out.println("Duplicate engine number detected: (" + next.engineNumber + "). Entry not added.");
+                    continue;
+                }
+                merged.add(next);
+                last = next;
+            }
+            root = AVL.buildBalanced(merged, 0, merged.size());
+        }
+        System.out.println("CSV file loaded successfully.");
+    }
+
+    // method to add an item with all five categories
+    // returns false if the item was not added
+    public boolean addItemCSV(String date, String stockLabel, String brand, String engineNumber, String status) {
+        int epochDay = invStockBST3.stockDate.parse(date);
+        if (epochDay == invStockBST3.stockDate.INVALID) {
+            System.out.println("Invalid date (" + date + ") for engine number " + engineNumber + ". Entry not added.");
+            return false;
+        }
+        node newNode = new node(epochDay, stockLabel, brand, engineNumber, status,
+                invStockBST3.engineKey.pack(engineNumber), null, null);
+
+        synchronized (this) {
+            node updated = insert(root, newNode);
+            // insert hands back the same tree when the engine number is already there
+            if (updated == root) {
+                System.out.println("Duplicate engine number detected: (" + engineNumber + "). Entry not added.");
+                return false;
+            }
+            root = updated;
+        }
+        return true;
+    }
+
+    // method to add an item from the user side, newly added stock is always new and on-hand
+    public void addItem(String brand, String engineNumber) {
+        addItemCSV(invStockBST3.stockDate.format((int) LocalDate.now().toEpochDay()), "New", brand, engineNumber, "On-hand");
+    }
+
+    // method to delete an item based on engine number
+    public void deleteItem(String engineNumber) {
+        long key = invStockBST3.engineKey.pack(engineNumber);
+        synchronized (this) {
+            node updated = delete(root, key, engineNumber);
+            if (updated == root) {
+                System.out.println("Item with engine number " + engineNumber + " not found.");
+                return;
+            }
+            root = updated;
+        }
+        System.out.println("Item with engine number " + engineNumber + " deleted.");
+    }
+
+    // method to edit an item once stockInventory.editItem has asked for the new values
+    // a date of stockDate.INVALID or a null value keeps the current value
+    // the edited unit is a new node, so snapshots taken before still show the old values
+    public boolean update(invStockBST3.itemUpdate change) {
+        long key = invStockBST3.engineKey.pack(change.engineNumber);
+        synchronized (this) {
+            node updated = update(root, key, change.engineNumber, change.date, change.stockLabel, change.brand,
+                    change.status);
+            if (updated == root) {
+                return false;
+            }
+            root = updated;
+        }
+        return true;
+    }
+
+    // method to find a unit by engine number in the latest version, as a treeNode copy, or null
+    public invStockBST3.treeNode find(String engineNumber) {
+        node found = snapshot().find(engineNumber);
+        return found == null ? null : found.toTreeNode();
+    }
+
+    // matches of a search for the prompts of stockInventory.searchInventory, all from one snapshot
+    public Iterable<invStockBST3.treeNode> matches(int choice, String searchValue, String to) {
+        List<node> found = snapshot().search(choice, searchValue, to);
+        return () -> found.stream().map(node::toTreeNode).iterator();
+    }
+
+    // method to display the inventory in engine number order
+    // the rows come from one snapshot, so they are consistent even if units are changed while they print
+    public void displayInventory() {
+        snapshot view = snapshot();
+        if (view.size() == 0) {
+            System.out.println("Inventory is empty.");
+            return;
+        }
+        System.out.println("Current Inventory:");
+        for (node current : view) {
+            invStockBST3.displayNode(current.toTreeNode());
+        }
+    }
+
+    // method to write the inventory to a CSV file from one snapshot, without holding up any writer
+    // the rows are written like every other storage mode does, see invStockBST3.writeCSVFile
+    public void saveCSV(String filename) throws IOException {
+        snapshot view = snapshot();
+        invStockBST3.writeCSVFile(filename, out -> {
+            for (node current : view) {
+                out.row(current.date, current.stockLabel, current.brand, current.engineNumber, current.status);
+            }
+        });
+    }
+
+    // number of units in the latest version
+    public int size() {
+        return size(root);
+    }
+
+    public int getHeight() {
+        return height(root);
+    }
+
+    // returns a new subtree with the node added, or the same subtree if the engine number is already in it
+    private static node insert(node current, node newNode) {
+        if (current == null) {
+            return newNode;
+        }
+        int cmp = invStockBST3.engineKey.compare(newNode.key, newNode.engineNumber, current.key, current.engineNumber);
+        if (cmp < 0) {
+            node newLeft = insert(current.left, newNode);
+            return newLeft == current.left ? current : AVL.balance(current, newLeft, current.right);
+        } else if (cmp > 0) {
+            node newRight = insert(current.right, newNode);
+            return newRight == current.right ? current : AVL.balance(current, current.left, newRight);
+        }
+        return current;
+    }
+
+    // returns a new subtree without the engine number, or the same subtree if it is not in it
+    private static node delete(node current, long key, String engineNumber) {
+        if (current == null) {
+            return null;
+        }
+        int cmp = invStockBST3.engineKey.compare(key, engineNumber, current.key, current.engineNumber);
+        if (cmp < 0) {
+            node newLeft = delete(current.left, key, engineNumber);
+            return newLeft == current.left ? current : AVL.balance(current, newLeft, current.right);
+        } else if (cmp > 0) {
+            node newRight = delete(current.right, key, engineNumber);
+            return newRight == current.right ? current : AVL.balance(current, current.left, newRight);
+        }
+
+        // the in-order successor takes the place of the deleted node, see avlTree.unlink
+        return AVL.unlink(current);
+    }
+
+    // returns a new subtree in which the node with the engine number has new values, or the same subtree if it is not in it
+    // a date of stockDate.INVALID or a null value keeps the current value
+    // only the fields change, so the shape of the tree and every height stay the same
+    private static node update(node current, long key, String engineNumber, int date, String stockLabel, String brand,
+                               String status) {
+        if (current == null) {
+            return null;
+        }
+        int cmp = invStockBST3.engineKey.compare(key, engineNumber, current.key, current.engineNumber);
+        if (cmp < 0) {
+            node newLeft = update(current.left, key, engineNumber, date, stockLabel, brand, status);
+            return newLeft == current.left ? current : current.withChildren(newLeft, current.right);
+        } else if (cmp > 0) {
+            node newRight = update(current.right, key, engineNumber, date, stockLabel, brand, status);
+            return newRight == current.right ? current : current.withChildren(current.left, newRight);
+        }
+        return new node(date == invStockBST3.stockDate.INVALID ? current.date : date,
+                stockLabel == null ? current.stockLabel : stockLabel,
+                brand == null ? current.brand : brand,
+                current.engineNumber,
+                status == null ? current.status : status,
+                current.key, current.left, current.right);
+    }
+
+    private static int height(node current) {
+        return current == null ? 0 : current.height;
+    }
+
+    private static int size(node current) {
+        return current == null ? 0 : current.size;
+    }
+}
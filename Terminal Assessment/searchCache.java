@@ -0,0 +1,165 @@
+// packages for keeping the results in least recently used order
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// results of the most recent searches of an invStockBST3, so running the same search again,
+// such as every Honda unit at the start of each shift, costs one hash lookup until the data changes
+//
+// every node that is added, deleted or edited drops exactly the cached searches it matches, before or after
+// the change, because those are the only results it can make different; a search for another brand stays cached
+// rebuilding the whole BST (loading a CSV file or snapshot, or a large batch) empties the cache instead
+//
+// the inventory invalidates while it holds the write lock, and a search only stores its result if nothing was
+// invalidated since it started, so a result computed from data that has changed in the meantime is never kept
+class searchCache {
+    // number of searches kept, the least recently used one is dropped first
+    static final int CAPACITY = 256;
+    // results with more matches than this are not kept, so a few huge ranges cannot take up the memory
+    static final int MAX_ROWS = 10_000;
+
+    // access order, so the first entry is always the least recently used one
+    private final Map<query, List<invStockBST3.treeNode>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // goes up on every invalidation
+    private long version;
+    private long hits;
+    private long misses;
+
+    // a search as given to invStockBST3.search, with its values parsed once for matching against nodes
+    static final class query {
+        final int choice;
+        final String value;
+        final String to;
+        // epoch days for the date searches, packed keys for the key and engine number range searches
+        private final long from;
+        private final long until;
+        // a key that is not a number never matches anything
+        private final boolean valid;
+
+        query(int choice, String value, String to) {
+            this.choice = choice;
+            this.value = value;
+            this.to = to;
+            long from = 0;
+            long until = 0;
+            boolean valid = true;
+            switch (choice) {
+                case 1:
+                case 7:
+                    from = invStockBST3.stockDate.parse(value);
+                    until = choice == 7 ? invStockBST3.stockDate.parse(to) : from;
+                    break;
+                case 6:
+                    try {
+                        from = Long.parseLong(value.trim());
+                    } catch (NumberFormatException e) {
+                        valid = false;
+                    }
+                    break;
+                case 9:
+                    from = invStockBST3.engineKey.pack(value);
+                    until = invStockBST3.engineKey.pack(to);
+                    break;
+                default:
+                    break;
+            }
+            this.from = from;
+            this.until = until;
+            this.valid = valid;
+        }
+
+        // returns true if the node is, or would be, one of the results of this search
+        boolean matches(invStockBST3.treeNode node) {
+            switch (choice) {
+                case 1: return node.date == from;
+                case 2: return node.stockLabel.equals(value);
+                case 3: return node.brand.equals(value);
+                case 4: return node.engineNumber.equals(value);
+                case 5: return node.status.equals(value);
+                case 6: return valid && node.key == from;
+                case 7: return node.date >= from && node.date <= until;
+                case 8: return node.engineNumber.startsWith(value);
+                case 9:
+                    return invStockBST3.engineKey.compare(node.key, node.engineNumber, from, value) >= 0
+                            && invStockBST3.engineKey.compare(node.key, node.engineNumber, until, to) <= 0;
+                default: return false;
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof query)) {
+                return false;
+            }
+            query that = (query) other;
+            return choice == that.choice && Objects.equals(value, that.value) && Objects.equals(to, that.to);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(choice, value, to);
+        }
+    }
+
+    // returns the cached result of a search, or null if it has to be run
+    synchronized List<invStockBST3.treeNode> get(query search) {
+        List<invStockBST3.treeNode> matches = entries.get(search);
+        if (matches == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return matches;
+    }
+
+    // returns the version to pass to put, read before the search is run
+    synchronized long version() {
+        return version;
+    }
+
+    // method to keep the result of a search that started at a version, unless the data changed since
+    // returns the result as the read-only list that is shared with later searches
+    synchronized List<invStockBST3.treeNode> put(long started, query search, List<invStockBST3.treeNode> matches) {
+        List<invStockBST3.treeNode> shared = Collections.unmodifiableList(matches);
+        if (started != version || matches.size() > MAX_ROWS) {
+            return shared;
+        }
+
+        entries.put(search, shared);
+        if (entries.size() > CAPACITY) {
+            Iterator<query> eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        return shared;
+    }
+
+    // method to drop the searches a node matches, called once with the node as it was and once as it is
+    synchronized void invalidate(invStockBST3.treeNode node) {
+        version++;
+        if (!entries.isEmpty()) {
+            entries.keySet().removeIf(search -> search.matches(node));
+        }
+    }
+
+    // method to drop every search
+    synchronized void clear() {
+        version++;
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,337 @@
+// packages for splitting the CSV file into one file per shard
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+//more specific packages
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// inventory split over several independent invStockBST3 trees (shards), by a hash of the engine number
+// every shard has its own root, lock, secondary indexes, CSV file and change log, so writes to different
+// shards never wait for each other and write throughput grows with the number of cores
+// an add, delete, edit or lookup only goes to the shard that owns the engine number; searches, displaying
+// and writing go to every shard at once and the results are merged back into one order
+class shardedInventory implements stockInventory {
+    private final invStockBST3[] shards;
+
+    // one shard per core
+    shardedInventory() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    shardedInventory(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one shard is needed.");
+        }
+        shards = new invStockBST3[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new invStockBST3();
+        }
+    }
+
+    // returns the file of one shard: inventory.csv becomes inventory.shard0.csv, inventory.shard1.csv, ...
+    static String shardFile(String filename, int shard) {
+        int dot = filename.lastIndexOf('.');
+        int slash = Math.max(filename.lastIndexOf('/'), filename.lastIndexOf('\\'));
+        if (dot <= slash) {
+            return filename + ".shard" + shard;
+        }
+        return filename.substring(0, dot) + ".shard" + shard + filename.substring(dot);
+    }
+
+    // returns the shard that owns an engine number
+    // the bits of the hash are spread first, so engine numbers that only differ at the end are spread out too
+    int shardOf(String engineNumber) {
+        int hash = engineNumber.hashCode();
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, shards.length);
+    }
+
+    // method to load the inventory, every shard from its own file and on its own core
+    // the rows of the CSV file are split over the shard files first if it has none yet, or if it was changed
+    // after they were written (saveCSV always writes it before the shard files, so only a change made outside
+    // this program makes it newer); the change log of every shard is replayed on top, as for a single tree
+    // shard files written for a different number of shards are refused, since the rows would be in the wrong shards
+    public void loadFromCSV(String filename) {
+        try {
+            if (!Files.exists(Paths.get(shardFile(filename, 0)))) {
+                split(filename);
+            } else if (!Files.exists(Paths.get(shardFile(filename, shards.length - 1)))
+                    || Files.exists(Paths.get(shardFile(filename, shards.length)))) {
+                System.err.println("Error reading CSV file: the shard files of " + filename
+                        + " were written for a different number of shards than " + shards.length + ".");
+                return;
+            } else if (isNewerThanShards(filename)) {
+                split(filename);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading CSV file: " + e.getMessage());
+            return;
+        }
+
+        boolean loaded = IntStream.range(0, shards.length).parallel()
+                .mapToObj(i -> shards[i].loadCSV(shardFile(filename, i)))
+                .reduce(true, Boolean::logicalAnd);
+        if (loaded) {
+            System.out.println("CSV file loaded successfully.");
+        }
+    }
+
+    // true if the CSV file was modified after any of its shard files, false if it is gone and only they are left
+    private boolean isNewerThanShards(String filename) throws IOException {
+        if (!Files.exists(Paths.get(filename))) {
+            return false;
+        }
+        FileTime modified = Files.getLastModifiedTime(Paths.get(filename));
+        for (int i = 0; i < shards.length; i++) {
+            if (modified.compareTo(Files.getLastModifiedTime(Paths.get(shardFile(filename, i)))) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // method to add an item from the CSV file with all five categories
+    public void addItemCSV(String date, String stockLabel, String brand, String engineNumber, String status) {
+        shards[shardOf(engineNumber)].addItemCSV(date, stockLabel, brand, engineNumber, status);
+    }
+
+    // method to add an item to the inventory from the user side
+    public void addItem(String brand, String engineNumber) {
+        shards[shardOf(engineNumber)].addItem(brand, engineNumber);
+    }
+
+    // method to delete an item based on engine number
+    public void deleteItem(String engineNumber) {
+        shards[shardOf(engineNumber)].deleteItem(engineNumber);
+    }
+
+    // returns a copy of the unit with an engine number, or null
+    public invStockBST3.treeNode find(String engineNumber) {
+        return shards[shardOf(engineNumber)].find(engineNumber);
+    }
+
+    // changes the fields of a unit on the shard that owns it, the prompts are those of stockInventory.editItem
+    public boolean update(invStockBST3.itemUpdate update) {
+        return shards[shardOf(update.engineNumber)].update(update);
+    }
+
+    // matches of a search for the prompts of stockInventory.searchInventory, with the same choices
+    // a single engine number only needs its own shard, anything else is searched on every shard at once
+    // and the matches of the shards are merged while they are iterated, so a streamed search stays streamed
+    public Iterable<invStockBST3.treeNode> matches(int choice, String searchValue, String to) {
+        if (choice == 4) {
+            return shards[shardOf(searchValue)].matches(choice, searchValue, to);
+        }
+        // matches of a date range are in date order, every other search lists its matches in engine number order
+        Comparator<invStockBST3.treeNode> order = choice == 7
+                ? Comparator.<invStockBST3.treeNode>comparingInt(node -> node.date).thenComparing(invStockBST3.NODE_ORDER)
+                : invStockBST3.NODE_ORDER;
+        return () -> merge(IntStream.range(0, shards.length).parallel()
+                .mapToObj(i -> shards[i].matches(choice, searchValue, to).iterator())
+                .collect(Collectors.toList()), order);
+    }
+
+    // method to sort the inventory by brand, on every shard
+    public void sortbyBrand() {
+        for (invStockBST3 shard : shards) {
+            shard.useBrandOrder();
+        }
+        System.out.println("Inventory sorted by brand.");
+    }
+
+    // method to display the inventory, merged from every shard in the same order a single tree would use
+    public void displayInventory() {
+        List<invStockBST3.treeNode> inventory = listInventory();
+        if (inventory.isEmpty()) {
+            System.out.println("Inventory is empty.");
+            return;
+        }
+        System.out.println("Current Inventory:");
+        for (invStockBST3.treeNode node : inventory) {
+            invStockBST3.displayNode(node);
+        }
+    }
+
+    // writes the inventory to the CSV file without asking for confirmation, merged from every shard like
+    // displayInventory, then every shard to its own file, all at once
+    // the shard files are written last, so they are newer than the CSV file and loadFromCSV keeps using them
+    public void saveCSV(String filename) throws IOException {
+        List<invStockBST3.treeNode> inventory = listInventory();
+        invStockBST3.writeCSVFile(filename, out -> {
+            for (invStockBST3.treeNode node : inventory) {
+                out.row(node.date, node.stockLabel, node.brand, node.engineNumber, node.status);
+            }
+        });
+        try {
+            IntStream.range(0, shards.length).parallel().forEach(i -> {
+                try {
+                    shards[i].saveCSV(shardFile(filename, i));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // copies of every unit, in engine number order, or in brand order once sorted by brand
+    List<invStockBST3.treeNode> listInventory() {
+        // the brand order of a single tree lists each brand in engine number order
+        Comparator<invStockBST3.treeNode> order = shards[0].isSortedByBrand()
+                ? Comparator.<invStockBST3.treeNode, String>comparing(node -> node.brand).thenComparing(invStockBST3.NODE_ORDER)
+                : invStockBST3.NODE_ORDER;
+        return fanOut(invStockBST3::listInventory, order);
+    }
+
+    // number of units over every shard
+    public int size() {
+        int total = 0;
+        for (invStockBST3 shard : shards) {
+            total += shard.size();
+        }
+        return total;
+    }
+
+    // height of the tallest shard
+    public int getHeight() {
+        int height = 0;
+        for (invStockBST3 shard : shards) {
+            height = Math.max(height, shard.getHeight());
+        }
+        return height;
+    }
+
+    int shardCount() {
+        return shards.length;
+    }
+
+    // runs a query on every shard at once, then merges the results
+    // every shard already returns its results in the given order, so the lists only have to be merged
+    private List<invStockBST3.treeNode> fanOut(Function<invStockBST3, List<invStockBST3.treeNode>> query,
+                                               Comparator<invStockBST3.treeNode> order) {
+        List<Iterator<invStockBST3.treeNode>> parts = IntStream.range(0, shards.length).parallel()
+                .mapToObj(i -> query.apply(shards[i]).iterator())
+                .collect(Collectors.toList());
+        List<invStockBST3.treeNode> merged = new ArrayList<>();
+        merge(parts, order).forEachRemaining(merged::add);
+        return merged;
+    }
+
+    // merges iterators that are each in the given order, one match at a time
+    // the next match of every iterator waits in a priority queue, so each match costs O(log shards)
+    private static Iterator<invStockBST3.treeNode> merge(List<Iterator<invStockBST3.treeNode>> parts,
+                                                         Comparator<invStockBST3.treeNode> order) {
+        PriorityQueue<Map.Entry<invStockBST3.treeNode, Iterator<invStockBST3.treeNode>>> heads =
+                new PriorityQueue<>(Math.max(1, parts.size()), (a, b) -> order.compare(a.getKey(), b.getKey()));
+        for (Iterator<invStockBST3.treeNode> part : parts) {
+            if (part.hasNext()) {
+                heads.add(new AbstractMap.SimpleImmutableEntry<>(part.next(), part));
+            }
+        }
+
+        return new Iterator<invStockBST3.treeNode>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public invStockBST3.treeNode next() {
+                Map.Entry<invStockBST3.treeNode, Iterator<invStockBST3.treeNode>> head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                Iterator<invStockBST3.treeNode> part = head.getValue();
+                if (part.hasNext()) {
+                    heads.add(new AbstractMap.SimpleImmutableEntry<>(part.next(), part));
+                }
+                return head.getKey();
+            }
+        };
+    }
+
+    // splits a CSV file into one file per shard, each with the same two header lines
+    // rows are copied as they are, so invalid rows end up in a shard file too and are reported when it is loaded
+    // like invStockBST3.writeCSVFile, every shard file is written to a temporary file and flushed to disk before
+    // it replaces the old one
+    private void split(String filename) throws IOException {
+        List<String> headers = invStockBST3.readHeaders(Paths.get(filename));
+        List<Path> temps = new ArrayList<>();
+        FileOutputStream[] files = new FileOutputStream[shards.length];
+        Writer[] writers = new Writer[shards.length];
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                Path target = Paths.get(shardFile(filename, i)).toAbsolutePath();
+                Path temp = invStockBST3.createTempFile(target);
+                temps.add(temp);
+                files[i] = new FileOutputStream(temp.toFile());
+                writers[i] = new BufferedWriter(new OutputStreamWriter(files[i], StandardCharsets.UTF_8), 1 << 16);
+                for (String header : headers) {
+                    writers[i].write(header);
+                    writers[i].write(System.lineSeparator());
+                }
+            }
+
+            csvLoader.forEachRow(filename, new csvLoader.rowVisitor() {
+                @Override
+                public void row(csvRowParser parser, ByteBuffer buffer) {
+                    write(shardOf(parser.field(buffer, 3)), parser.row(buffer));
+                }
+
+                @Override
+                public void invalidRow(String row) {
+                    write(0, row);
+                }
+
+                private void write(int shard, String row) {
+                    try {
+                        writers[shard].write(row);
+                        writers[shard].write(System.lineSeparator());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+
+            for (int i = 0; i < shards.length; i++) {
+                writers[i].flush();
+                files[i].getFD().sync();
+                writers[i].close();
+                writers[i] = null;
+            }
+            // the file of shard 0 is what marks a finished split, so it is put in place last
+            for (int i = shards.length - 1; i >= 0; i--) {
+                invStockBST3.replaceFile(temps.get(i), Paths.get(shardFile(filename, i)).toAbsolutePath());
+            }
+        } finally {
+            for (Writer writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+            for (Path temp : temps) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+// packages for the prompts of the menu
+import java.io.IOException;
+import java.util.Scanner;
+
+// operations of the MotorPH Stock Card System menu, so one menu with the same prompts drives every storage mode
+// invStockBST3.main picks the mode from the command line:
+//   (nothing)        invStockBST3, one AVL tree with secondary indexes and a change log
+//   --shards <n>     shardedInventory, n independent invStockBST3 trees
+//   --columnar       columnarInventory, off-heap columns with an index of row ids
+//   --mapped <file>  mappedSnapshot, a snapshot file that is memory-mapped and only read
+//   --persistent     persistentInventory, an immutable AVL tree that readers use through snapshots
+// the prompts for searching, editing and writing live here, every mode only answers the request itself
+// an operation that a mode does not have prints a message instead
+interface stockInventory {
+    void loadFromCSV(String filename);
+
+    void addItem(String brand, String engineNumber);
+
+    void deleteItem(String engineNumber);
+
+    void displayInventory();
+
+    // returns a copy of the unit with an engine number, or null
+    invStockBST3.treeNode find(String engineNumber);
+
+    // changes the fields of a unit, a date of stockDate.INVALID or a null value keeps the current value
+    // returns false if the engine number is not in the inventory, or if the mode could not store a new value
+    // (it prints why in that case)
+    boolean update(invStockBST3.itemUpdate update);
+
+    // returns the matches of a search, with the choices of searchInventory and in the order they are listed,
+    // or null if the mode does not have that search
+    // to is only used by the range searches (7 and 9), as the end of the range
+    Iterable<invStockBST3.treeNode> matches(int choice, String searchValue, String to);
+
+    // writes the inventory to a CSV file without asking for confirmation
+    void saveCSV(String filename) throws IOException;
+
+    default void sortbyBrand() {
+        unavailable("Sorting by brand");
+    }
+
+    default void saveSnapshot(String filename) {
+        unavailable("Saving a snapshot");
+    }
+
+    default void loadSnapshot(String filename) {
+        unavailable("Loading a snapshot");
+    }
+
+    default void printStatistics() {
+        unavailable("Showing statistics");
+    }
+
+    // method to search inventory based on user-defined criteria
+    default void searchInventory() {
+        Scanner scanner = new Scanner(System.in);
+
+        // asks to select search criteria
+        System.out.println("Search Inventory by:");
+        System.out.println("1. Date");
+        System.out.println("2. Stock Label");
+        System.out.println("3. Brand");
+        System.out.println("4. Engine Number");
+        System.out.println("5. Status");
+        System.out.println("6. Key (engineNumber-based)");
+        System.out.println("7. Date Range");
+        System.out.println("8. Engine Number Prefix");
+        System.out.println("9. Engine Number Range");
+        System.out.print("Enter choice: ");
+        int choice = scanner.nextInt();
+        scanner.nextLine();  // Consume newline
+
+        // get any matching entries based on criteria selected
+        String searchValue = "";
+        switch (choice) {
+            case 1:
+                System.out.print("Enter Date to search (M/D/YYYY): ");
+                searchValue = scanner.nextLine();
+                break;
+            case 2:
+                System.out.print("Enter Stock Label to search: ");
+                searchValue = scanner.nextLine();
+                break;
+            case 3:
+                System.out.print("Enter Brand to search: ");
+                searchValue = scanner.nextLine();
+                break;
+            case 4:
+                System.out.print("Enter Engine Number to search: ");
+                searchValue = scanner.nextLine();
+                break;
+            case 5:
+                System.out.print("Enter Status to search: ");
+                searchValue = scanner.nextLine();
+                break;
+            case 6:
+                System.out.print("Enter Key to search (provided in displayed inventory): ");
+                searchValue = scanner.nextLine();
+                break;
+            case 7:
+            case 9:
+                break;
+            case 8:
+                System.out.print("Enter the first characters of the Engine Number: ");
+                searchValue = scanner.nextLine().trim();
+                break;
+            default:
+                System.out.println("Invalid choice.");
+                return;
+        }
+
+        // ranges also need the end of the range
+        String to = "";
+        if (choice == 7) {
+            System.out.print("Enter start Date (M/D/YYYY): ");
+            searchValue = scanner.nextLine();
+            System.out.print("Enter end Date (M/D/YYYY): ");
+            to = scanner.nextLine();
+            if (invStockBST3.stockDate.parse(searchValue) == invStockBST3.stockDate.INVALID
+                    || invStockBST3.stockDate.parse(to) == invStockBST3.stockDate.INVALID) {
+                System.out.println("Invalid date format.");
+                return;
+            }
+        } else if (choice == 9) {
+            System.out.print("Enter first Engine Number: ");
+            searchValue = scanner.nextLine().trim();
+            System.out.print("Enter last Engine Number: ");
+            to = scanner.nextLine().trim();
+        }
+
+        Iterable<invStockBST3.treeNode> matches = matches(choice, searchValue, to);
+        if (matches == null) {
+            unavailable("This search");
+            return;
+        }
+
+        // the matches are printed as they come, so a large result is never held in memory here
+        boolean found = false;
+        for (invStockBST3.treeNode node : matches) {
+            System.out.println("- " + node);
+            found = true;  // Track that at least one item was found
+        }
+
+        // if no match was found
+        if (!found) {
+            System.out.println("No items found for the given search criteria.");
+        }
+    }
+
+    // method to edit an item in the inventory
+    // the current values are shown from a copy, and the unit is looked up again by update once the new values
+    // have been entered, in case it was deleted in the meantime
+    default void editItem(String engineNumber) {
+        invStockBST3.treeNode node = find(engineNumber);
+        if (node == null) {
+            System.out.println("Stock entry not found.");
+            return;
+        }
+
+        Scanner scanner = new Scanner(System.in);
+        System.out.println("Editing stock entry: " + node);
+
+        // fields left empty keep their current value
+        System.out.print("Enter new Date (current: " + invStockBST3.stockDate.format(node.date) + ") or press Enter to keep: ");
+        String newDate = scanner.nextLine().trim();
+        int epochDay = invStockBST3.stockDate.INVALID;
+        if (!newDate.isEmpty()) {
+            epochDay = invStockBST3.stockDate.parse(newDate);
+            if (epochDay == invStockBST3.stockDate.INVALID) {
+                System.out.println("Invalid date format. Date not changed.");
+            }
+        }
+
+        System.out.print("Enter new Stock Label (current: " + node.stockLabel + ") or press Enter to keep: ");
+        String newStockLabel = scanner.nextLine().trim();
+
+        System.out.print("Enter new Brand (current: " + node.brand + ") or press Enter to keep: ");
+        String newBrand = scanner.nextLine().trim();
+
+        System.out.print("Enter new Status (current: " + node.status + ") or press Enter to keep: ");
+        String newStatus = scanner.nextLine().trim();
+
+        if (update(new invStockBST3.itemUpdate(engineNumber, epochDay, newStockLabel.isEmpty() ? null : newStockLabel,
+                newBrand.isEmpty() ? null : newBrand, newStatus.isEmpty() ? null : newStatus))) {
+            System.out.println("Stock entry updated successfully.");
+        } else if (find(engineNumber) == null) {
+            System.out.println("Stock entry not found.");
+        } else {
+            System.out.println("Stock entry not updated.");
+        }
+    }
+
+    // method to write the inventory to a CSV file
+    default void writeToCSV(String filename) {
+        // displays warning before overwriting
+        // useful because people may forget to load the CSV file first
+        System.out.println("Warning: The CSV file will be overwritten with current inventory data.");
+        System.out.print("Do you want to proceed? (yes/no): ");
+        Scanner scanner = new Scanner(System.in);
+        String confirmation = scanner.nextLine().trim().toLowerCase();
+
+        if (!confirmation.equals("yes")) {
+            System.out.println("Operation canceled. CSV file was not modified.");
+            return;
+        }
+
+        try {
+            saveCSV(filename);
+            System.out.println("CSV file updated successfully.");
+        } catch (IOException e) {
+            System.err.println("Error updating CSV file: " + e.getMessage());
+        }
+    }
+
+    // prints that the storage mode does not have an operation
+    static void unavailable(String operation) {
+        System.out.println(operation + " is not available in this storage mode.");
+    }
+}
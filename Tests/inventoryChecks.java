@@ -0,0 +1,324 @@
+// packages for the scratch files of the checks
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+//more specific packages
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// self-checking harness for the parts of the stock card system that are easy to break without noticing:
+// reading back the CSV files it writes, keeping the AVL trees balanced, and recovering changes from the change log
+//
+// the repository has no build file, so this is a plain program and not JUnit; compile the Terminal Assessment
+// classes, then this file against them, and run it from any folder (it only writes to a temporary folder):
+//   javac -d out/ta "Terminal Assessment"/*.java
+//   javac -cp out/ta -d out/checks Tests/inventoryChecks.java
+//   java -cp out/checks:out/ta inventoryChecks
+//
+// every failed check is printed, and the exit status is 1 if any check failed
+class inventoryChecks {
+    private static final PrintStream RESULTS = System.out;
+    private static final PrintStream NULL = new PrintStream(OutputStream.nullOutputStream());
+
+    private static int checks;
+    private static int failures;
+
+    // rows that only survive a save if the writer quotes them: commas, quotes, spaces at either end, empty fields
+    static final String[][] AWKWARD_ROWS = {
+            {"3/5/2023", "New", "Honda, Inc", "ABC1", "On-hand"},
+            {"3/6/2023", "Old", "\"Quoted\" Motors", "ABC2", "Sold, returned"},
+            {"2/1/2023", " Spaced ", "Kymco", "ABC3", ""},
+            {"2/2/2023", "New", "\"", "ABC,4", "On-hand"},
+            {"12/31/2022", "", "Yamaha", "ABC5", "Sold"}};
+
+    public static void main(String[] args) throws Exception {
+        Path folder = Files.createTempDirectory("inventoryChecks");
+        try {
+            csvRoundTrip(folder);
+            avlInvariants();
+            changeLogReplay(folder);
+        } finally {
+            System.setOut(RESULTS);
+            try (Stream<Path> files = Files.walk(folder)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        RESULTS.println(checks + " checks, " + failures + " failed.");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // loads awkward rows, saves them and loads the saved file again in every storage mode that writes CSV files
+    // the values read back have to be the ones written, and a second save has to give the same file
+    static void csvRoundTrip(Path folder) throws IOException {
+        Path source = folder.resolve("awkward.csv");
+        List<String> lines = new ArrayList<>(invStockBST3.DEFAULT_HEADERS);
+        for (String[] row : AWKWARD_ROWS) {
+            StringBuilder line = new StringBuilder();
+            for (String field : row) {
+                if (line.length() > 0) {
+                    line.append(',');
+                }
+                line.append('"').append(field.replace("\"", "\"\"")).append('"');
+            }
+            lines.add(line.toString());
+        }
+        Files.write(source, lines, StandardCharsets.UTF_8);
+
+        List<Supplier<stockInventory>> modes = List.of(invStockBST3::new, persistentInventory::new,
+                columnarInventory::new);
+        for (Supplier<stockInventory> mode : modes) {
+            String name = mode.get().getClass().getSimpleName();
+            Path first = folder.resolve(name + "-first.csv");
+            Path second = folder.resolve(name + "-second.csv");
+
+            System.setOut(NULL);
+            stockInventory loaded = mode.get();
+            loaded.loadFromCSV(source.toString());
+            loaded.saveCSV(first.toString());
+            stockInventory reloaded = mode.get();
+            reloaded.loadFromCSV(first.toString());
+            reloaded.saveCSV(second.toString());
+            System.setOut(RESULTS);
+
+            for (String[] row : AWKWARD_ROWS) {
+                invStockBST3.treeNode node = reloaded.find(row[3]);
+                check(node != null && invStockBST3.stockDate.format(node.date).equals(row[0])
+                                && node.stockLabel.equals(row[1]) && node.brand.equals(row[2])
+                                && node.status.equals(row[4]),
+                        name + " reads back " + String.join("|", row) + ", got " + node);
+            }
+            check(csvLoader.load(first.toString()).invalidRows.isEmpty(), name + " writes no invalid rows");
+            check(Files.readString(first).equals(Files.readString(second)), name + " saves the same file twice");
+        }
+    }
+
+    // the children and stored height of a node in one of the AVL trees, so one check covers every storage mode
+    interface shape<N> {
+        N left(N node);
+
+        N right(N node);
+
+        int height(N node);
+    }
+
+    // adds and deletes random engine numbers in every storage mode that keeps an AVL tree, and checks the tree
+    // every few hundred changes: stored heights, balance, engine number order, and the same units as a plain set
+    static void avlInvariants() throws ReflectiveOperationException {
+        List<Supplier<stockInventory>> modes = List.of(invStockBST3::new, persistentInventory::new,
+                columnarInventory::new);
+        for (Supplier<stockInventory> mode : modes) {
+            stockInventory inventory = mode.get();
+            String name = inventory.getClass().getSimpleName();
+            TreeSet<String> expected = new TreeSet<>();
+            Random random = new Random(42);
+
+            System.setOut(NULL);
+            for (int change = 1; change <= 4000; change++) {
+                // lower case engine numbers cannot be packed, so both kinds of key end up in the same tree
+                int number = random.nextInt(1500);
+                String engineNumber = number % 7 == 0 ? "e-" + number : "E" + number;
+                if (random.nextInt(3) == 0) {
+                    inventory.deleteItem(engineNumber);
+                    expected.remove(engineNumber);
+                } else {
+                    inventory.addItem("Brand" + random.nextInt(5), engineNumber);
+                    expected.add(engineNumber);
+                }
+
+                // large batches go through the merge and rebuild paths instead of one descent per item
+                if (inventory instanceof invStockBST3 && change % 1000 == 0) {
+                    invStockBST3 tree = (invStockBST3) inventory;
+                    List<invStockBST3.treeNode> adds = new ArrayList<>();
+                    List<String> deletes = new ArrayList<>();
+                    for (int i = 0; i < 600; i++) {
+                        String added = "B" + random.nextInt(3000);
+                        adds.add(new invStockBST3.treeNode(19000, "New", "Batch", added, "On-hand",
+                                invStockBST3.engineKey.pack(added)));
+                        expected.add(added);
+                        String deleted = "E" + random.nextInt(1500);
+                        deletes.add(deleted);
+                        expected.remove(deleted);
+                    }
+                    tree.addAll(adds);
+                    tree.deleteAll(deletes);
+                }
+
+                if (change % 250 == 0) {
+                    System.setOut(RESULTS);
+                    checkTree(inventory, name + " after " + change + " changes", expected);
+                    System.setOut(NULL);
+                }
+            }
+            System.setOut(RESULTS);
+        }
+    }
+
+    // checks the AVL tree of a storage mode against the engine numbers it should hold
+    static void checkTree(stockInventory inventory, String what, TreeSet<String> expected)
+            throws ReflectiveOperationException {
+        List<String> engineNumbers = new ArrayList<>();
+        int height;
+        if (inventory instanceof invStockBST3) {
+            for (invStockBST3.treeNode node : ((invStockBST3) inventory).listInventory()) {
+                engineNumbers.add(node.engineNumber);
+            }
+            invStockBST3.treeNode root = (invStockBST3.treeNode) field(inventory, "root");
+            height = checkedHeight(new shape<invStockBST3.treeNode>() {
+                public invStockBST3.treeNode left(invStockBST3.treeNode node) { return node.left; }
+                public invStockBST3.treeNode right(invStockBST3.treeNode node) { return node.right; }
+                public int height(invStockBST3.treeNode node) { return node.height; }
+            }, root, null);
+        } else if (inventory instanceof persistentInventory) {
+            for (persistentInventory.node node : ((persistentInventory) inventory).snapshot()) {
+                engineNumbers.add(node.engineNumber);
+            }
+            persistentInventory.node root = (persistentInventory.node) field(inventory, "root");
+            height = checkedHeight(new shape<persistentInventory.node>() {
+                public persistentInventory.node left(persistentInventory.node node) { return node.left; }
+                public persistentInventory.node right(persistentInventory.node node) { return node.right; }
+                public int height(persistentInventory.node node) { return node.height; }
+            }, root, null);
+            check(root == null || root.size == expected.size(), what + ": subtree size of the root");
+        } else {
+            columnarInventory columns = (columnarInventory) inventory;
+            columns.forEachRow(row -> engineNumbers.add(columns.engineNumber(row)));
+            int[] left = (int[]) field(inventory, "left");
+            int[] right = (int[]) field(inventory, "right");
+            byte[] heights = (byte[]) field(inventory, "heights");
+            height = checkedHeight(new shape<Integer>() {
+                public Integer left(Integer row) { return left[row]; }
+                public Integer right(Integer row) { return right[row]; }
+                public int height(Integer row) { return heights[row]; }
+            }, (Integer) field(inventory, "root"), intAvlTree.EMPTY);
+        }
+
+        check(height >= 0, what + ": every node stores its height and is balanced");
+        boolean ordered = true;
+        for (int i = 1; i < engineNumbers.size(); i++) {
+            String before = engineNumbers.get(i - 1);
+            String after = engineNumbers.get(i);
+            ordered &= invStockBST3.engineKey.compare(invStockBST3.engineKey.pack(before), before,
+                    invStockBST3.engineKey.pack(after), after) < 0;
+        }
+        check(ordered, what + ": engine numbers in order");
+        // the order check above already rules out an engine number listed twice
+        check(new TreeSet<>(engineNumbers).equals(expected),
+                what + ": holds " + engineNumbers.size() + " units, expected " + expected.size());
+        // an AVL tree with n nodes is never taller than about 1.44 * log2(n + 2)
+        check(height <= 1.45 * Math.log(expected.size() + 2) / Math.log(2), what + ": height " + height);
+    }
+
+    // returns the height of a subtree, or -1 if a node in it stores the wrong height
+    // or the heights of its two subtrees differ by more than one
+    static <N> int checkedHeight(shape<N> tree, N node, N empty) {
+        if (node == null || node.equals(empty)) {
+            return 0;
+        }
+        int left = checkedHeight(tree, tree.left(node), empty);
+        int right = checkedHeight(tree, tree.right(node), empty);
+        int height = 1 + Math.max(left, right);
+        if (left < 0 || right < 0 || Math.abs(left - right) > 1 || tree.height(node) != height) {
+            return -1;
+        }
+        return height;
+    }
+
+    // changes an inventory without saving it, then loads the CSV file into a new inventory, as after a crash
+    // the change log has to bring back every change, and a record that was only partly written is cut off
+    static void changeLogReplay(Path folder) throws IOException {
+        Path csv = folder.resolve("replay.csv");
+        List<String> lines = new ArrayList<>(invStockBST3.DEFAULT_HEADERS);
+        for (int i = 0; i < 200; i++) {
+            lines.add("1/" + (1 + i % 28) + "/2023,New,Brand" + i % 4 + ",R" + i + ",On-hand");
+        }
+        Files.write(csv, lines, StandardCharsets.UTF_8);
+        String original = Files.readString(csv);
+
+        System.setOut(NULL);
+        invStockBST3 before = new invStockBST3();
+        before.loadFromCSV(csv.toString());
+        before.addItem("Honda", "R500");
+        before.addItemCSV("2/1/2023", "Old", "Kymco", "r-lower", "Sold");
+        before.deleteItem("R7");
+        before.update(new invStockBST3.itemUpdate("R8", invStockBST3.stockDate.INVALID, null, "Yamaha", "Sold"));
+        List<invStockBST3.treeNode> adds = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        List<invStockBST3.itemUpdate> edits = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            adds.add(new invStockBST3.treeNode(19400 + i, "New", "Suzuki", "S" + i, "On-hand",
+                    invStockBST3.engineKey.pack("S" + i)));
+            deletes.add("R" + (50 + i));
+            edits.add(new invStockBST3.itemUpdate("S" + i, invStockBST3.stockDate.INVALID, "Old", null, null));
+        }
+        before.addAll(adds);
+        before.deleteAll(deletes);
+        before.updateAll(edits);
+        String expected = listing(before);
+
+        // the inventory is dropped without saving, like a program that was killed
+        invStockBST3 recovered = new invStockBST3();
+        recovered.loadFromCSV(csv.toString());
+        System.setOut(RESULTS);
+        check(Files.readString(csv).equals(original), "changes are not written to the CSV before a checkpoint");
+        check(listing(recovered).equals(expected), "the change log brings back every unsaved change");
+
+        // a record cut off half-way: its length promises more bytes than the file has
+        Path log = inventoryLog.forCSV(csv.toString());
+        long intact = Files.size(log);
+        Files.write(log, new byte[] {0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+        System.setOut(NULL);
+        invStockBST3 torn = new invStockBST3();
+        torn.loadFromCSV(csv.toString());
+        torn.addItem("Honda", "R600");
+        String afterTorn = listing(torn);
+        invStockBST3 reloaded = new invStockBST3();
+        reloaded.loadFromCSV(csv.toString());
+        System.setOut(RESULTS);
+        check(listing(torn).replace(lineOf(torn, "R600"), "").equals(expected),
+                "a torn record at the end of the change log is skipped");
+        check(Files.size(log) > intact && listing(reloaded).equals(afterTorn),
+                "changes after a torn record are appended to the intact part of the change log");
+    }
+
+    // every unit of an inventory, one per line, in engine number order
+    static String listing(invStockBST3 inventory) {
+        StringBuilder lines = new StringBuilder();
+        for (invStockBST3.treeNode node : inventory.listInventory()) {
+            lines.append(node).append('\n');
+        }
+        return lines.toString();
+    }
+
+    static String lineOf(invStockBST3 inventory, String engineNumber) {
+        return inventory.find(engineNumber) + "\n";
+    }
+
+    static Object field(Object owner, String name) throws ReflectiveOperationException {
+        Field field = owner.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(owner);
+    }
+
+    static void check(boolean passed, String what) {
+        checks++;
+        if (!passed) {
+            failures++;
+            RESULTS.println("FAILED: " + what);
+        }
+    }
+}